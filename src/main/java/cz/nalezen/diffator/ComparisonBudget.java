@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of work of single comparison - count of visited matrix cells and/or time. Each search of longest common
+ * substring is charged by size of searched area (M*N cells), it is not started when budget is exhausted or deadline passed.
+ * Deadline is checked before each search - running search is not interrupted, so combine it with cells limit to bound
+ * the longest possible step. Object is immutable, deadline starts when comparison starts.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ComparisonBudget {
+
+	/**
+	 * No limit of cells or time.
+	 */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	
+	/**
+	 * Budget limited only by count of cells.
+	 * @param maxCells
+	 * @return
+	 */
+	public static ComparisonBudget ofCells(long maxCells) {
+		return new ComparisonBudget(maxCells, UNLIMITED);
+	}
+	
+	/**
+	 * Budget limited only by time.
+	 * @param timeout
+	 * @param unit
+	 * @return
+	 */
+	public static ComparisonBudget ofTimeout(long timeout, TimeUnit unit) {
+		return new ComparisonBudget(UNLIMITED, unit.toNanos(timeout));
+	}
+	
+	private final long maxCells;
+	private final long timeoutNanos;
+	
+	/**
+	 * @param maxCells maximal count of visited cells or UNLIMITED
+	 * @param timeoutNanos maximal duration of comparison in nanoseconds or UNLIMITED
+	 */
+	public ComparisonBudget(long maxCells, long timeoutNanos) {
+		if (maxCells<0 || timeoutNanos<0) {
+			throw new IllegalArgumentException("Budget must not be negative!");
+		}
+		
+		this.maxCells = maxCells;
+		this.timeoutNanos = timeoutNanos;
+	}
+	
+	public long getMaxCells() {
+		return maxCells;
+	}
+	
+	public long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+}
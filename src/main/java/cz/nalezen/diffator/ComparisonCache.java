@@ -0,0 +1,265 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cz.nalezen.diffator.tools.DiffEventsRecorder;
+
+/**
+ * LRU cache of comparison results for ContentComparator (see ContentComparator.setCache()). Results are keyed by
+ * 128-bit fingerprints of both contents, minBlockSize and implementation. Optionally diff events are recorded too,
+ * so they may be replayed to handler without comparison.
+ * Cache is bounded by count of entries and by weight - each entry weights 1 plus count of its recorded events.
+ * Cache may be shared by more comparators, this class is threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ComparisonCache {
+
+	private final int maxEntries;
+	private final long maxWeight;
+	private volatile boolean recordingEvents;
+	
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Construct cache of similarities only.
+	 * @param maxEntries maximum count of cached results
+	 */
+	public ComparisonCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Construct cache.
+	 * @param maxEntries maximum count of cached results
+	 * @param maxWeight maximum sum of weights of cached results (1 + count of recorded events per result)
+	 */
+	public ComparisonCache(int maxEntries, long maxWeight) {
+		if (maxEntries<=0 || maxWeight<=0) {
+			throw new IllegalArgumentException("Cache limits must be positive!");
+		}
+		
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+	}
+	
+	/**
+	 * Turns on/off recording of events. When turned on, comparisons with handler are cached too - events are recorded
+	 * and delivered to handler after comparison is done. Otherwise only comparisons without handler are cached.
+	 * @param recordingEvents
+	 */
+	public void setRecordingEvents(boolean recordingEvents) {
+		this.recordingEvents = recordingEvents;
+	}
+	
+	public boolean isRecordingEvents() {
+		return recordingEvents;
+	}
+	
+	/**
+	 * Count of comparisons answered by cache.
+	 * @return
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	
+	/**
+	 * Count of comparisons not found in cache.
+	 * @return
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	
+	/**
+	 * Count of cached results.
+	 * @return
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Sum of weights of cached results.
+	 * @return
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+	
+	/**
+	 * Remove all cached results, statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * Find result, counts hit or miss.
+	 * @param key
+	 * @param withEvents result must contain events
+	 * @return null when not found
+	 */
+	Entry get(Key key, boolean withEvents) {
+		Entry res;
+		
+		synchronized (this) {
+			res = entries.get(key);
+		}
+		
+		if (res!=null && (!withEvents || res.events!=null)) {
+			hits.incrementAndGet();
+			return res;
+		}
+		
+		misses.incrementAndGet();
+		return null;
+	}
+	
+	/**
+	 * Store result, least recently used results are evicted when limits are exceeded.
+	 * @param key
+	 * @param similarity
+	 * @param events recorded events or null
+	 */
+	synchronized void put(Key key, double similarity, DiffEventsRecorder events) {
+		Entry entry = new Entry(similarity, events);
+		Entry old = entries.put(key, entry);
+		
+		if (old!=null) {
+			weight -= old.weight();
+		}
+		
+		weight += entry.weight();
+		
+		Iterator<Entry> it = entries.values().iterator();
+		
+		while ((entries.size()>maxEntries || weight>maxWeight) && it.hasNext()) {
+			weight -= it.next().weight();
+			it.remove();
+		}
+	}
+	
+	/**
+	 * Key of comparison.
+	 * @param left
+	 * @param right
+	 * @param minBlockSize
+	 * @param engine implementation class
+	 * @return
+	 */
+	static Key key(Content left, Content right, int minBlockSize, Class<?> engine) {
+		long[] fingerprint = new long[4];
+		
+		fingerprint(left, fingerprint, 0);
+		fingerprint(right, fingerprint, 2);
+		
+		return new Key(fingerprint, minBlockSize, engine);
+	}
+	
+	/**
+	 * 128-bit fingerprint of items - by String.hashCode() and by own 64-bit hash of characters, so colliding
+	 * String hashes are not enough for collision. MappedContent is fingerprinted by bytes, without decoding Strings.
+	 */
+	private static void fingerprint(Content content, long[] res, int offset) {
+		if (content instanceof MappedContent) {
+			long[] fingerprint = ((MappedContent)content).fingerprint();
+			
+			res[offset] = fingerprint[0];
+			res[offset+1] = fingerprint[1];
+			
+			return;
+		}
+		
+		long first = content.length();
+		long second = content.length();
+		
+		for (int i=0;i<content.length();++i) {
+			String item = content.getItem(i);
+			
+			first = (first+item.hashCode())*0x9E3779B97F4A7C15L;
+			first ^= first>>>31;
+			
+			second = (second^item.length())*0x100000001B3L;
+			
+			for (int j=0;j<item.length();++j) {
+				second = (second^item.charAt(j))*0x100000001B3L;
+			}
+		}
+		
+		res[offset] = first;
+		res[offset+1] = second;
+	}
+	
+	/**
+	 * Cached result.
+	 */
+	static class Entry {
+		
+		final double similarity;
+		final DiffEventsRecorder events;
+		
+		Entry(double similarity, DiffEventsRecorder events) {
+			this.similarity = similarity;
+			this.events = events;
+		}
+		
+		long weight() {
+			return 1+(events!=null ? events.size() : 0);
+		}
+	}
+	
+	static class Key {
+		
+		private final long[] fingerprint;
+		private final int minBlockSize;
+		private final Class<?> engine;
+		
+		Key(long[] fingerprint, int minBlockSize, Class<?> engine) {
+			this.fingerprint = fingerprint;
+			this.minBlockSize = minBlockSize;
+			this.engine = engine;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			
+			Key key = (Key)other;
+			
+			return Arrays.equals(fingerprint, key.fingerprint) && minBlockSize==key.minBlockSize && engine==key.engine;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (int)(fingerprint[0]^fingerprint[2]*31)+minBlockSize;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator;
+
+/**
+ * Result of comparison limited by ComparisonBudget. When budget was exhausted, parts not searched yet were considered 
+ * different - similarity is then lower bound of the real one.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ComparisonResult {
+
+	private final double similarity;
+	private final boolean lowerBound;
+	
+	public ComparisonResult(double similarity, boolean lowerBound) {
+		this.similarity = similarity;
+		this.lowerBound = lowerBound;
+	}
+	
+	/**
+	 * Similarity in range from 0.0 to 1.0.
+	 * @return
+	 */
+	public double getSimilarity() {
+		return similarity;
+	}
+	
+	/**
+	 * Whether comparison was cut by budget - real similarity may be higher.
+	 * @return
+	 */
+	public boolean isLowerBound() {
+		return lowerBound;
+	}
+	
+	@Override
+	public String toString() {
+		return (lowerBound ? ">=" : "")+similarity;
+	}
+}
@@ -29,6 +29,7 @@ import cz.nalezen.diffator.utils.IntRange;
 public class Content {
 
 	private String[] items;
+	private int length;
 	private IntRange range;
 	private String contentId;
 	
@@ -51,6 +52,16 @@ public class Content {
 		initialize(wordsArr);
 	}
 	
+	/**
+	 * Constructs content without items array - for subclasses providing items by getItem() (see MappedContent).
+	 * @param length number of items
+	 */
+	protected Content(int length) {
+		this.length = length;
+		
+		range = new IntRange(0, length);
+	}
+	
 	/**
 	 * Internal initialization
 	 * @param items
@@ -58,6 +69,7 @@ public class Content {
 	private void initialize(String[] items) {
 		this.items = items;
 		
+		length = items.length;
 		range = new IntRange(0, items.length);
 	}
 	
@@ -117,9 +129,35 @@ public class Content {
 	 * @return
 	 */
 	public int length() {
-		return items.length;
+		return length;
 	}
 	
+	/**
+	 * Integer IDs of items (see TokenizedContent). Plain Content has no IDs.
+	 * @return IDs array of the same length as items or null
+	 */
+	public int[] getTokenIds() {
+		return null;
+	}
+
+	/**
+	 * Dictionary which assigned token IDs.
+	 * @return dictionary or null when Content has no IDs
+	 */
+	public TokenDictionary getTokenDictionary() {
+		return null;
+	}
+
+	/**
+	 * Check whether token IDs of this and other Content may be compared instead of items. It requires both
+	 * Contents to have IDs assigned by the same dictionary.
+	 * @param other
+	 * @return
+	 */
+	public boolean sharesTokenIds(Content other) {
+		return getTokenIds()!=null && other.getTokenIds()!=null && getTokenDictionary()==other.getTokenDictionary();
+	}
+
 	/**
 	 * Iterable for simple usage in foreach.
 	 * @param range
@@ -15,14 +15,33 @@
 
 package cz.nalezen.diffator;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cz.nalezen.diffator.impl.ComparatorSession;
 import cz.nalezen.diffator.impl.ContentsComparatorHashImpl;
 import cz.nalezen.diffator.impl.ContentsComparatorImpl;
+import cz.nalezen.diffator.tools.DiffEventsRecorder;
+import cz.nalezen.diffator.utils.BitParallelLcs;
+import cz.nalezen.diffator.utils.TokenEncoder;
 
 /**
  * Class doing actual comparation/diff. Provides content similarity ratio in range from 0.0 to 1.0.
  *  This number means "how big portion of longer content is covered by shorter one". So 0.0 means no match, 1.0 means complete match.
  *  During comparison callback methods of optionally delivered handler are called in SAX fashion. This may be simply used for diff purposes.
  *  This class instance is threadsafe - each comparison owns object with comparison related data (ContentsComparatorContext subclass).
+ *  In pooled mode (see setPooled()) these data are kept per thread and reused by subsequent comparisons.
  * @author Jaroslav Kubos
  *
  */
@@ -50,6 +69,12 @@ public class ContentComparator {
 	}
 	
 	private ContentsComparatorImpl<?> impl;
+	private volatile ThreadLocal<SessionHolder> sessions;
+	
+	//holders of all threads - weak, so holders of finished threads are not kept
+	private final Set<SessionHolder> holders = Collections.newSetFromMap(new WeakHashMap<SessionHolder, Boolean>());
+	private volatile boolean scoreOnly;
+	private volatile ComparisonCache cache;
 	
 	/**
 	 * Non-parametric constructor using default implementation ContentsComparatorHashImpl
@@ -66,6 +91,70 @@ public class ContentComparator {
 		this.impl = impl;
 	}
 	
+	/**
+	 * Turns on/off pooled mode. In this mode each thread keeps its own comparison session, so buffers are allocated
+	 * once and reused by subsequent comparisons. Buffers are held until mode is turned off (sessions of all threads
+	 * are released then) - keep in mind they are sized for the biggest compared contents.
+	 * @param pooled
+	 */
+	public void setPooled(boolean pooled) {
+		synchronized (holders) {
+			if (pooled) {
+				if (sessions==null) {
+					sessions = new ThreadLocal<>();
+				}
+			} else if (sessions!=null) {
+				sessions.remove();
+				sessions = null;
+				
+				for (SessionHolder holder : holders) {
+					holder.session = null;
+				}
+				
+				holders.clear();
+			}
+		}
+	}
+	
+	public boolean isPooled() {
+		return sessions!=null;
+	}
+	
+	/**
+	 * Turns on/off score-only mode. In this mode comparisons without handler (and minBlockSize at most 1) return
+	 * LCS/max(M,N) computed by bit-parallel longest common subsequence - it is much faster, but it is a different
+	 * metric, not an approximation of recursive similarity. Thresholds tuned for recursive comparison don't apply to it
+	 * (see BitParallelLcs for how far the scores differ).
+	 * @param scoreOnly
+	 */
+	public void setScoreOnly(boolean scoreOnly) {
+		this.scoreOnly = scoreOnly;
+	}
+	
+	public boolean isScoreOnly() {
+		return scoreOnly;
+	}
+	
+	/**
+	 * Set cache of results used by compare() - repeated comparisons of the same contents are not computed again.
+	 * @param cache cache (may be shared by more comparators) or null
+	 */
+	public void setCache(ComparisonCache cache) {
+		this.cache = cache;
+	}
+	
+	public ComparisonCache getCache() {
+		return cache;
+	}
+	
+	/**
+	 * Create session owning all comparison related data. It may be used for repeated comparisons by single thread.
+	 * @return
+	 */
+	public ComparatorSession<?> createSession() {
+		return impl.createSession();
+	}
+	
 	/**
 	 * Compares two contents.
 	 */
@@ -85,12 +174,264 @@ public class ContentComparator {
 	 * minBlockSize it is considered as different. This may make comparison faster.
 	 */
 	public double compare(Content left, Content right, DiffEventsHandler handler, int minBlockSize) {
-		return impl.compare(left, right, handler, minBlockSize);
+		ComparatorSession<?> session = getPooledSession();
+		
+		if (handler==null && isScoreOnly(minBlockSize)) {
+			BitParallelLcs lcs = session!=null ? session.getLcs() : new BitParallelLcs();
+			
+			return lcs.similarity(left, right);
+		}
+		
+		ComparisonCache cache = this.cache;
+		
+		if (cache!=null && (handler==null || cache.isRecordingEvents())) {
+			return compareCached(cache, session, left, right, handler, minBlockSize);
+		}
+		
+		return compare(session, left, right, handler, minBlockSize);
+	}
+	
+	private double compare(ComparatorSession<?> session, Content left, Content right, DiffEventsHandler handler, int minBlockSize) {
+		if (session==null) {
+			return impl.compare(left, right, handler, minBlockSize);
+		}
+		
+		return session.compare(left, right, handler, minBlockSize);
+	}
+	
+	/**
+	 * Comparison by cache - result is computed only when it is not cached. Events are recorded and replayed to handler.
+	 */
+	private double compareCached(ComparisonCache cache, ComparatorSession<?> session, Content left, Content right, DiffEventsHandler handler, int minBlockSize) {
+		ComparisonCache.Key key = ComparisonCache.key(left, right, minBlockSize, impl.getClass());
+		ComparisonCache.Entry entry = cache.get(key, handler!=null);
+		
+		double res;
+		DiffEventsRecorder events;
+		
+		if (entry!=null) {
+			res = entry.similarity;
+			events = entry.events;
+		} else {
+			events = handler!=null || cache.isRecordingEvents() ? new DiffEventsRecorder() : null;
+			res = compare(session, left, right, events, minBlockSize);
+			
+			cache.put(key, res, events);
+		}
+		
+		if (handler!=null) {
+			handler.onBeforeStart();
+			events.replay(handler, left, right);
+			handler.onDone(res);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Session of current thread in pooled mode.
+	 * @return null when not pooled
+	 */
+	private ComparatorSession<?> getPooledSession() {
+		ThreadLocal<SessionHolder> sessions = this.sessions;
+		
+		if (sessions==null) {
+			return null;
+		}
+		
+		SessionHolder holder = sessions.get();
+		
+		if (holder==null) {
+			holder = new SessionHolder();
+			
+			synchronized (holders) {
+				holders.add(holder);
+			}
+			
+			sessions.set(holder);
+		}
+		
+		ComparatorSession<?> session = holder.session;
+		
+		if (session==null) {
+			session = impl.createSession();
+			holder.session = session;
+		}
+		
+		return session;
+	}
+	
+	/**
+	 * Session of one thread in pooled mode - it may be released by other thread.
+	 */
+	private static class SessionHolder {
+		
+		volatile ComparatorSession<?> session;
+	}
+	
+	/**
+	 * Compares lines of two files. Files are memory-mapped (see MappedContent), lines are not loaded to heap
+	 * - only Strings of lines passed to handler are decoded.
+	 * @param left
+	 * @param right
+	 * @param charset encoding of both files, must be ASCII compatible
+	 * @param handler events consumer, may be null
+	 * @param minBlockSize
+	 * @return similarity
+	 * @throws IOException
+	 */
+	public double compareFiles(File left, File right, Charset charset, DiffEventsHandler handler, int minBlockSize) throws IOException {
+		MappedTokenTable table = new MappedTokenTable();
+		
+		MappedContent a = MappedContent.open(left, charset, table);
+		MappedContent b = MappedContent.open(right, charset, table);
+		
+		return compare(a, b, handler, minBlockSize);
+	}
+	
+	/**
+	 * Compares two contents by multiple threads of pool - independent parts around found overlaps are compared in parallel.
+	 * Result and events are the same as by compare(), events are delivered after all parts are done.
+	 */
+	public double compareParallel(Content left, Content right, DiffEventsHandler handler, int minBlockSize, ForkJoinPool pool) {
+		return impl.compareParallel(left, right, handler, minBlockSize, pool);
+	}
+	
+	/**
+	 * Compares left content with every candidate, see compareAll(Content, List, int, ExecutorService).
+	 */
+	public double[] compareAll(Content left, List<? extends Content> candidates, ExecutorService executor) {
+		return compareAll(left, candidates, 0, executor);
+	}
+	
+	/**
+	 * Compares left content with every candidate. Left content is encoded to token IDs once, candidates are encoded
+	 * just by lookup to its dictionary (candidates sharing token IDs with left content are used directly). Candidates are
+	 * compared by tasks of executor, each task reuses its comparison session.
+	 * @param left left content of all comparisons
+	 * @param candidates right contents
+	 * @param minBlockSize see compare()
+	 * @param executor executor running comparisons, when null all is done by calling thread
+	 * @return similarities in order of candidates
+	 */
+	public double[] compareAll(Content left, final List<? extends Content> candidates, final int minBlockSize, ExecutorService executor) {
+		final double[] res = new double[candidates.size()];
+		final LeftEncoding encoding = new LeftEncoding(left, candidates);
+		final AtomicInteger next = new AtomicInteger();
+		
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				ComparatorSession<?> session = impl.createSession();
+				
+				for (int i=next.getAndIncrement();i<res.length;i=next.getAndIncrement()) {
+					Content candidate = candidates.get(i);
+					
+					if (encoding.shares(candidate)) {
+						res[i] = compare(session, encoding.getOriginal(), candidate, minBlockSize);
+					} else {
+						res[i] = compare(session, encoding.getEncoded(), encoding.encode(candidate), minBlockSize);
+					}
+				}
+			}
+		};
+		
+		if (executor==null) {
+			worker.run();
+			return res;
+		}
+		
+		int workersCount = Math.min(res.length, Runtime.getRuntime().availableProcessors());
+		List<Future<?>> futures = new ArrayList<>();
+		
+		for (int w=0;w<workersCount;++w) {
+			futures.add(executor.submit(worker));
+		}
+		
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Comparison interrupted!", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Comparison failed!", e.getCause());
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Comparison without handler by given session - respects score-only mode.
+	 */
+	private double compare(ComparatorSession<?> session, Content left, Content right, int minBlockSize) {
+		if (isScoreOnly(minBlockSize)) {
+			return session.getLcs().similarity(left, right);
+		}
+		
+		return session.compare(left, right, null, minBlockSize);
+	}
+	
+	private boolean isScoreOnly(int minBlockSize) {
+		return scoreOnly && minBlockSize<=1;
+	}
+	
+	/**
+	 * Left content of compareAll() encoded once for all candidates.
+	 */
+	private static class LeftEncoding {
+		
+		private Content original;
+		private TokenDictionary dictionary;
+		private Content encoded;
+		private int unknownId;
+		
+		LeftEncoding(Content left, List<? extends Content> candidates) {
+			original = left;
+			
+			for (Content candidate : candidates) {
+				if (!left.sharesTokenIds(candidate)) {
+					dictionary = new TokenDictionary();
+					encoded = new TokenizedContent(left.getItems(), dictionary);
+					unknownId = dictionary.size();
+					break;
+				}
+			}
+		}
+		
+		boolean shares(Content candidate) {
+			return original.sharesTokenIds(candidate);
+		}
+		
+		Content getOriginal() {
+			return original;
+		}
+		
+		Content getEncoded() {
+			return encoded;
+		}
+		
+		/**
+		 * Tokens not present in left content can't match, so they all get the same ID - dictionary is not modified.
+		 */
+		Content encode(Content candidate) {
+			int[] ids = new int[candidate.length()];
+			
+			for (int i=0;i<ids.length;++i) {
+				int id = dictionary.findId(candidate.getItem(i));
+				ids[i] = id>=0 ? id : unknownId;
+			}
+			
+			return new TokenizedContent(candidate.getItems(), ids, dictionary);
+		}
 	}
 	
 	/**
 	 * Compares two contents in same fashion as compare() methods does. Only difference is that it takes minimum expected value of result.
-	 * If from size of contents is obvious that this goal cannot be reached not comparison is done and 0 is returned.
+	 * If from size of contents is obvious that this goal cannot be reached not comparison is done and 0 is returned. Contents without
+	 * common block of minBlockSize items are rejected too. During comparison upper bound of result is kept and comparison is aborted
+	 * (0 is returned, handler gets onDone(0)) as soon as the goal can't be reached.
 	 */
 	public double compareWithExpectation(double minExpectation, Content left, Content right, DiffEventsHandler handler, int minBlockSize) {
 		
@@ -100,7 +441,38 @@ public class ContentComparator {
 			return 0;
 		}
 		
-		return compare(left, right, handler, minBlockSize);
+		ComparatorSession<?> session = getPooledSession();
+		
+		//no common block - result is 0 for sure
+		if (minExpectation>0) {
+			int minCommon = Math.max(1, minBlockSize);
+			TokenEncoder encoder = session!=null ? session.getEncoder() : new TokenEncoder();
+			
+			if (encoder.commonCount(left, right, minCommon)<minCommon) {
+				return 0;
+			}
+		}
+		
+		if (session==null) {
+			return impl.compareWithExpectation(left, right, handler, minBlockSize, minExpectation);
+		}
+		
+		return session.compareWithExpectation(left, right, handler, minBlockSize, minExpectation);
+	}
+	
+	/**
+	 * Compares two contents with limited work - for strict latency. Each search of longest common substring is charged
+	 * by size of its area, when budget is exhausted or deadline passed the rest is reported as different.
+	 * @param budget limits of comparison
+	 * @return similarity and flag whether it is just lower bound of real one
+	 */
+	public ComparisonResult compareWithBudget(Content left, Content right, DiffEventsHandler handler, int minBlockSize, ComparisonBudget budget) {
+		ComparatorSession<?> session = getPooledSession();
+		
+		if (session==null) {
+			return impl.compareWithBudget(left, right, handler, minBlockSize, budget);
+		}
+		
+		return session.compareWithBudget(left, right, handler, minBlockSize, budget);
 	}
 }
-
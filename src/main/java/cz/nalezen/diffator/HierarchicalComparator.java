@@ -0,0 +1,363 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator;
+
+import java.util.Arrays;
+
+import cz.nalezen.diffator.DiffEventsHandler.EventSide;
+import cz.nalezen.diffator.DiffEventsHandler.EventType;
+import cz.nalezen.diffator.tools.DiffEventsRecorder;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Two-level comparison of big contents. Items (words) are grouped to blocks (lines, paragraphs) by caller.
+ * Blocks are compared first, then only items of changed blocks are compared - many small comparisons instead of
+ * one huge. Events are reported with ranges of item-level contents. Similarity combines both levels by coverage:
+ * (2*items of common blocks + sum of similarity*items of compared changed parts) / (items of left + items of right).
+ * It is not the same number as item-level comparison of whole contents returns.
+ * Object is threadsafe when underlying ContentComparator is.
+ * @author Jaroslav Kubos
+ *
+ */
+public class HierarchicalComparator {
+
+	private ContentComparator comparator;
+	
+	/**
+	 * Construct comparator using default implementation for both levels.
+	 */
+	public HierarchicalComparator() {
+		this(new ContentComparator());
+	}
+	
+	/**
+	 * Construct comparator.
+	 * @param comparator comparator used for both levels
+	 */
+	public HierarchicalComparator(ContentComparator comparator) {
+		this.comparator = comparator;
+	}
+	
+	/**
+	 * Compare contents by blocks, then items of changed blocks.
+	 * @param left left content (items)
+	 * @param leftBlocks index of first item of each block of left content in ascending order, first is 0 (empty only for empty content)
+	 * @param right right content (items)
+	 * @param rightBlocks index of first item of each block of right content in ascending order, first is 0 (empty only for empty content)
+	 * @param handler events consumer, may be null
+	 * @param minBlockSize minBlockSize of item-level comparisons
+	 * @return combined similarity
+	 */
+	public double compare(Content left, int[] leftBlocks, Content right, int[] rightBlocks, DiffEventsHandler handler, int minBlockSize) {
+		int[] boundsA = bounds(left, leftBlocks);
+		int[] boundsB = bounds(right, rightBlocks);
+		
+		//blocks are identified by sequences of token IDs of their items
+		TokenEncoder encoder = new TokenEncoder();
+		int[][] ids = encoder.encodeReusing(left, right, new int[2][]);
+		
+		BlockTable table = new BlockTable(boundsA.length+boundsB.length);
+		Content blocksA = new BlockContent(table, table.assignIds(ids[0], boundsA));
+		Content blocksB = new BlockContent(table, table.assignIds(ids[1], boundsB));
+		
+		encoder.release();
+		
+		DiffEventsRecorder blockEvents = new DiffEventsRecorder();
+		comparator.compare(blocksA, blocksB, blockEvents, 0);
+		
+		if (handler!=null) {
+			handler.onBeforeStart();
+		}
+		
+		BlockEventsWalker walker = new BlockEventsWalker(left, boundsA, right, boundsB, handler, minBlockSize);
+		blockEvents.replay(walker, null, null);
+		walker.flushChanged();
+		
+		int total = left.length()+right.length();
+		double res = total>0 ? Math.min(1, walker.covered/total) : 0;
+		
+		if (handler!=null) {
+			handler.onDone(res);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Block boundaries including end of content.
+	 */
+	private static int[] bounds(Content content, int[] blocks) {
+		//no blocks would drop all items
+		if (blocks.length==0 && content.length()>0) {
+			throw new IllegalArgumentException("Blocks must start at 0 and be in ascending order!");
+		}
+		
+		int[] res = Arrays.copyOf(blocks, blocks.length+1);
+		res[blocks.length] = content.length();
+		
+		for (int i=0;i<blocks.length;++i) {
+			if (res[i]>res[i+1] || (i==0 && res[0]!=0)) {
+				throw new IllegalArgumentException("Blocks must start at 0 and be in ascending order!");
+			}
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Part of content as standalone content - token IDs are kept.
+	 */
+	private static Content slice(Content content, int begin, int end) {
+		String[] items = new String[end-begin];
+		
+		for (int i=begin;i<end;++i) {
+			items[i-begin] = content.getItem(i);
+		}
+		
+		if (content.getTokenIds()!=null && content.getTokenDictionary()!=null) {
+			return new TokenizedContent(items, Arrays.copyOfRange(content.getTokenIds(), begin, end), content.getTokenDictionary());
+		}
+		
+		return new Content(items);
+	}
+	
+	/**
+	 * Receives block-level events, reports common blocks as items and compares items of changed blocks.
+	 */
+	private class BlockEventsWalker implements DiffEventsHandler {
+		
+		private Content left;
+		private int[] boundsA;
+		private Content right;
+		private int[] boundsB;
+		private DiffEventsHandler consumer;
+		private int minBlockSize;
+		
+		private IntRange rangeA = new IntRange();
+		private IntRange rangeB = new IntRange();
+		
+		//changed items not compared yet - consecutive different parts are joined
+		private IntRange changedA = new IntRange();
+		private IntRange changedB = new IntRange();
+		
+		double covered;
+		
+		BlockEventsWalker(Content left, int[] boundsA, Content right, int[] boundsB, DiffEventsHandler consumer, int minBlockSize) {
+			this.left = left;
+			this.boundsA = boundsA;
+			this.right = right;
+			this.boundsB = boundsB;
+			this.consumer = consumer;
+			this.minBlockSize = minBlockSize;
+		}
+		
+		@Override
+		public void onBeforeStart() {
+		}
+		
+		@Override
+		public void handle(Content content, IntRange range, EventType eventType, EventSide eventSide) {
+			if (eventSide==EventSide.LEFT) {
+				rangeA.initialize(boundsA[range.getBegin()], boundsA[range.getEnd()]);
+				return;
+			}
+			
+			rangeB.initialize(boundsB[range.getBegin()], boundsB[range.getEnd()]);
+			
+			if (eventType==EventType.DIFFERENT_PART) {
+				if (changedA.isEmpty() && changedB.isEmpty()) {
+					changedA.initialize(rangeA.getBegin(), rangeA.getEnd());
+					changedB.initialize(rangeB.getBegin(), rangeB.getEnd());
+				} else {
+					changedA.initialize(changedA.getBegin(), rangeA.getEnd());
+					changedB.initialize(changedB.getBegin(), rangeB.getEnd());
+				}
+				
+				return;
+			}
+			
+			flushChanged();
+			
+			covered += rangeA.length()+rangeB.length();
+			report(rangeA, rangeB, EventType.COMMON_PART);
+		}
+		
+		@Override
+		public void onDone(double similarity) {
+		}
+		
+		/**
+		 * Compare items of changed blocks.
+		 */
+		void flushChanged() {
+			if (changedA.isEmpty() && changedB.isEmpty()) {
+				return;
+			}
+			
+			if (changedA.isEmpty() || changedB.isEmpty()) {
+				report(changedA, changedB, EventType.DIFFERENT_PART);
+			} else {
+				Content a = slice(left, changedA.getBegin(), changedA.getEnd());
+				Content b = slice(right, changedB.getBegin(), changedB.getEnd());
+				
+				ShiftingHandler shifting = consumer!=null ? new ShiftingHandler(consumer, left, changedA.getBegin(), right, changedB.getBegin()) : null;
+				
+				double similarity = comparator.compare(a, b, shifting, minBlockSize);
+				covered += similarity*(changedA.length()+changedB.length());
+			}
+			
+			changedA.initialize(0, 0);
+			changedB.initialize(0, 0);
+		}
+		
+		private void report(IntRange rangeA, IntRange rangeB, EventType type) {
+			if (consumer!=null) {
+				consumer.handle(left, rangeA, type, EventSide.LEFT);
+				consumer.handle(right, rangeB, type, EventSide.RIGHT);
+			}
+		}
+	}
+	
+	/**
+	 * Assigns IDs to blocks - blocks are equal when they have the same sequences of token IDs. Blocks are looked up
+	 * by hash of the sequence, equality is verified by comparing IDs.
+	 */
+	private static class BlockTable {
+		
+		//open addressing table of block ID+1, 0 is empty slot
+		private int[] slots;
+		
+		//hash and items (IDs array and range) of the first occurrence of each block
+		private int[] hashes;
+		private int[][] owners;
+		private int[] begins;
+		private int[] ends;
+		private int size;
+		
+		/**
+		 * @param blocks maximal count of distinct blocks
+		 */
+		BlockTable(int blocks) {
+			slots = new int[Integer.highestOneBit(Math.max(2*blocks-1, 1))<<1];
+			hashes = new int[blocks];
+			owners = new int[blocks][];
+			begins = new int[blocks];
+			ends = new int[blocks];
+		}
+		
+		/**
+		 * IDs of blocks given by bounds.
+		 */
+		int[] assignIds(int[] ids, int[] bounds) {
+			int[] res = new int[bounds.length-1];
+			
+			for (int i=0;i<res.length;++i) {
+				res[i] = getId(ids, bounds[i], bounds[i+1]);
+			}
+			
+			return res;
+		}
+		
+		private int getId(int[] ids, int begin, int end) {
+			int hash = 1;
+			
+			for (int i=begin;i<end;++i) {
+				hash = hash*31+ids[i];
+			}
+			
+			int mask = slots.length-1;
+			int slot = (hash*0x9E3779B9)>>>16&mask;
+			
+			while (slots[slot]!=0) {
+				int id = slots[slot]-1;
+				
+				if (hashes[id]==hash && same(ids, begin, end, owners[id], begins[id], ends[id])) {
+					return id;
+				}
+				
+				slot = (slot+1)&mask;
+			}
+			
+			int id = size++;
+			
+			hashes[id] = hash;
+			owners[id] = ids;
+			begins[id] = begin;
+			ends[id] = end;
+			slots[slot] = id+1;
+			
+			return id;
+		}
+		
+		private static boolean same(int[] a, int beginA, int endA, int[] b, int beginB, int endB) {
+			if (endA-beginA!=endB-beginB) {
+				return false;
+			}
+			
+			for (int i=0;i<endA-beginA;++i) {
+				if (a[beginA+i]!=b[beginB+i]) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Content having one item per block - only block IDs are kept, items are their textual form.
+	 */
+	private static class BlockContent extends Content {
+		
+		private BlockTable table;
+		private int[] ids;
+		
+		BlockContent(BlockTable table, int[] ids) {
+			super(ids.length);
+			
+			this.table = table;
+			this.ids = ids;
+		}
+		
+		@Override
+		public String getItem(int index) {
+			return "#"+ids[index];
+		}
+		
+		@Override
+		public String[] getItems() {
+			String[] res = new String[length()];
+			
+			for (int i=0;i<res.length;++i) {
+				res[i] = getItem(i);
+			}
+			
+			return res;
+		}
+		
+		@Override
+		public int[] getTokenIds() {
+			return ids;
+		}
+		
+		@Override
+		public boolean sharesTokenIds(Content other) {
+			return other instanceof BlockContent && ((BlockContent)other).table==table;
+		}
+	}
+}
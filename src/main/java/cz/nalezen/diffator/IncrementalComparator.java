@@ -0,0 +1,322 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator;
+
+import java.util.Arrays;
+
+import cz.nalezen.diffator.impl.ComparatorSession;
+import cz.nalezen.diffator.tools.DiffEventsRecorder;
+import cz.nalezen.diffator.utils.IntRange;
+
+/**
+ * Comparison of growing contents (feeds, logs, comments). Items are appended to left and/or right content and only
+ * the tail after the last common block found so far is compared again - result of the head is kept. Engine context and
+ * helper objects are kept between updates by ComparatorSession.
+ * Each part moved to head has similarity 2*common items/(items of both sides) and parts are combined by coverage (weighted 
+ * by count of items, see HierarchicalComparator), so similarity differs from comparison of whole contents - head is never 
+ * revisited.
+ * Compared tail is limited to maxTail items of each side: older unmatched items are moved to head as different part, so
+ * each update costs comparison of at most maxTail*maxTail items even when contents stopped sharing blocks. The price is
+ * that items more than maxTail positions behind the end of the other side are never matched.
+ * This class is not threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class IncrementalComparator {
+
+	/**
+	 * Default limit of compared tail of each side.
+	 */
+	public static final int DEFAULT_MAX_TAIL = 4096;
+	
+	private ComparatorSession<?> session;
+	private TokenDictionary dictionary;
+	private int minBlockSize;
+	private int maxTail;
+	
+	private Items left = new Items();
+	private Items right = new Items();
+	
+	//head - compared part which is never compared again
+	private int headA;
+	private int headB;
+	private double headSimilarity;
+	private DiffEventsRecorder headEvents = new DiffEventsRecorder();
+	
+	private LastCommonTracker tracker = new LastCommonTracker();
+	
+	private boolean dirty;
+	
+	/**
+	 * Construct comparator of plain contents.
+	 * @param comparator comparator providing implementation
+	 * @param minBlockSize
+	 */
+	public IncrementalComparator(ContentComparator comparator, int minBlockSize) {
+		this(comparator, null, minBlockSize);
+	}
+	
+	/**
+	 * Construct comparator of tokenized contents.
+	 * @param comparator comparator providing implementation
+	 * @param dictionary dictionary assigning IDs to appended items, may be null
+	 * @param minBlockSize
+	 */
+	public IncrementalComparator(ContentComparator comparator, TokenDictionary dictionary, int minBlockSize) {
+		this(comparator, dictionary, minBlockSize, DEFAULT_MAX_TAIL);
+	}
+	
+	/**
+	 * Construct comparator of tokenized contents with given limit of compared tail.
+	 * @param comparator comparator providing implementation
+	 * @param dictionary dictionary assigning IDs to appended items, may be null
+	 * @param minBlockSize
+	 * @param maxTail maximal count of compared items of each side, older unmatched items are considered different
+	 */
+	public IncrementalComparator(ContentComparator comparator, TokenDictionary dictionary, int minBlockSize, int maxTail) {
+		if (maxTail<1) {
+			throw new IllegalArgumentException("Tail must have at least one item!");
+		}
+		
+		this.session = comparator.createSession();
+		this.dictionary = dictionary;
+		this.minBlockSize = minBlockSize;
+		this.maxTail = maxTail;
+	}
+	
+	/**
+	 * Append items to left content.
+	 * @param items
+	 */
+	public void appendLeft(String... items) {
+		append(left, items);
+	}
+	
+	/**
+	 * Append items to right content.
+	 * @param items
+	 */
+	public void appendRight(String... items) {
+		append(right, items);
+	}
+	
+	/**
+	 * Similarity of contents with all appended items. Only tail is compared when items were appended.
+	 * @return
+	 */
+	public double getSimilarity() {
+		update();
+		
+		int lengthA = left.count;
+		int lengthB = right.count;
+		
+		if (lengthA==0 || lengthB==0) {
+			return 0;
+		}
+		
+		//tail has no common block, only head is covered
+		return headSimilarity*(headA+headB)/(lengthA+lengthB);
+	}
+	
+	/**
+	 * Deliver events of actual state to handler - same sequence as compare() delivers.
+	 * @param consumer
+	 */
+	public void replay(DiffEventsHandler consumer) {
+		double similarity = getSimilarity();
+		
+		Content a = getLeft();
+		Content b = getRight();
+		
+		consumer.onBeforeStart();
+		
+		headEvents.replay(consumer, a, b);
+		
+		if (headA<a.length() || headB<b.length()) {
+			consumer.handle(a, new IntRange(headA, a.length()), DiffEventsHandler.EventType.DIFFERENT_PART, DiffEventsHandler.EventSide.LEFT);
+			consumer.handle(b, new IntRange(headB, b.length()), DiffEventsHandler.EventType.DIFFERENT_PART, DiffEventsHandler.EventSide.RIGHT);
+		}
+		
+		consumer.onDone(similarity);
+	}
+	
+	/**
+	 * Left content with all appended items - new object is returned by each call.
+	 * @return
+	 */
+	public Content getLeft() {
+		return left.content(0, left.count);
+	}
+	
+	/**
+	 * Right content with all appended items - new object is returned by each call.
+	 * @return
+	 */
+	public Content getRight() {
+		return right.content(0, right.count);
+	}
+	
+	private void append(Items target, String[] items) {
+		target.append(items, dictionary);
+		dirty = true;
+	}
+	
+	/**
+	 * Compare tail. When common block is found, events up to its end are moved to head, similarity of this part is its
+	 * coverage by common items.
+	 */
+	private void update() {
+		if (!dirty) {
+			return;
+		}
+		
+		dirty = false;
+		
+		limitTail();
+		
+		if (headA==left.count || headB==right.count) {
+			return;
+		}
+		
+		Content tailA = left.content(headA, left.count);
+		Content tailB = right.content(headB, right.count);
+		
+		tracker.clear();
+		session.compare(tailA, tailB, tracker, minBlockSize);
+		
+		if (tracker.endA==0) {
+			return;
+		}
+		
+		//events up to the last common block become part of head - tail is compared only once
+		tracker.events.replay(new ShiftingHandler(headEvents, null, headA, null, headB), null, null, tracker.commonEvents);
+		
+		double partSimilarity = 2.0*tracker.commonItems/(tracker.endA+tracker.endB);
+		
+		int newHeadA = headA+tracker.endA;
+		int newHeadB = headB+tracker.endB;
+		
+		headSimilarity = (headSimilarity*(headA+headB)+partSimilarity*(tracker.endA+tracker.endB))/(newHeadA+newHeadB);
+		
+		headA = newHeadA;
+		headB = newHeadB;
+	}
+	
+	/**
+	 * Move unmatched items older than maxTail to head as different part.
+	 */
+	private void limitTail() {
+		int newHeadA = Math.max(headA, left.count-maxTail);
+		int newHeadB = Math.max(headB, right.count-maxTail);
+		
+		if (newHeadA==headA && newHeadB==headB) {
+			return;
+		}
+		
+		headEvents.handle(null, new IntRange(headA, newHeadA), DiffEventsHandler.EventType.DIFFERENT_PART, DiffEventsHandler.EventSide.LEFT);
+		headEvents.handle(null, new IntRange(headB, newHeadB), DiffEventsHandler.EventType.DIFFERENT_PART, DiffEventsHandler.EventSide.RIGHT);
+		
+		headSimilarity = headSimilarity*(headA+headB)/(newHeadA+newHeadB);
+		
+		headA = newHeadA;
+		headB = newHeadB;
+	}
+	
+	/**
+	 * Growing items of one side.
+	 */
+	private static class Items {
+		
+		private String[] items = new String[16];
+		private int[] ids;
+		private TokenDictionary dictionary;
+		private int count;
+		
+		void append(String[] newItems, TokenDictionary dictionary) {
+			this.dictionary = dictionary;
+			
+			if (count+newItems.length>items.length) {
+				items = Arrays.copyOf(items, Math.max(items.length*2, count+newItems.length));
+			}
+			
+			if (dictionary!=null && (ids==null || ids.length<items.length)) {
+				ids = ids==null ? new int[items.length] : Arrays.copyOf(ids, items.length);
+			}
+			
+			for (String item : newItems) {
+				if (dictionary!=null) {
+					ids[count] = dictionary.getId(item);
+				}
+				
+				items[count++] = item;
+			}
+		}
+		
+		Content content(int begin, int end) {
+			String[] res = Arrays.copyOfRange(items, begin, end);
+			
+			if (dictionary!=null) {
+				return new TokenizedContent(res, Arrays.copyOfRange(ids, begin, end), dictionary);
+			}
+			
+			return new Content(res);
+		}
+	}
+	
+	/**
+	 * Records events and remembers end of the last common block, count of events up to it and count of common items.
+	 */
+	private static class LastCommonTracker implements DiffEventsHandler {
+		
+		DiffEventsRecorder events = new DiffEventsRecorder();
+		int endA;
+		int endB;
+		int commonEvents;
+		int commonItems;
+		
+		void clear() {
+			events.clear();
+			endA = 0;
+			endB = 0;
+			commonEvents = 0;
+			commonItems = 0;
+		}
+		
+		@Override
+		public void onBeforeStart() {
+		}
+		
+		@Override
+		public void handle(Content content, IntRange range, EventType eventType, EventSide eventSide) {
+			events.handle(content, range, eventType, eventSide);
+			
+			if (eventType==EventType.COMMON_PART) {
+				if (eventSide==EventSide.LEFT) {
+					endA = range.getEnd();
+					commonItems += range.length();
+				} else {
+					endB = range.getEnd();
+					commonEvents = events.size();
+				}
+			}
+		}
+		
+		@Override
+		public void onDone(double similarity) {
+		}
+	}
+}
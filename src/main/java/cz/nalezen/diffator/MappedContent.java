@@ -0,0 +1,315 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Content of lines of memory-mapped file. Items are kept only as offset/length pairs with precomputed hash, token IDs
+ * are assigned by MappedTokenTable. No String is created during comparison of contents sharing the table, so files
+ * bigger than heap may be compared. Strings are decoded only when getItem() is called (e.g. by diff events handler).
+ * Lines are separated by '\n', trailing '\r' is not part of line.
+ * @author Jaroslav Kubos
+ *
+ */
+public class MappedContent extends Content {
+
+	//files over 2GB are mapped by more buffers
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_SIZE = 1L<<CHUNK_BITS;
+	private static final long CHUNK_MASK = CHUNK_SIZE-1;
+	
+	private MappedByteBuffer[] chunks;
+	private Charset charset;
+	
+	private long[] offsets;
+	private int[] lengths;
+	private int[] tokenIds;
+	private MappedTokenTable table;
+	private int hash;
+	
+	//computed on first use by fingerprint()
+	private long[] fingerprint;
+	
+	/**
+	 * Map file and split it to lines.
+	 * @param file
+	 * @param charset encoding of file, must be ASCII compatible (UTF-8, ISO-8859-x, ...)
+	 * @param table table assigning token IDs, shared by compared contents
+	 * @return
+	 * @throws IOException
+	 */
+	public static MappedContent open(File file, Charset charset, MappedTokenTable table) throws IOException {
+		MappedByteBuffer[] chunks;
+		
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			long size = channel.size();
+			
+			chunks = new MappedByteBuffer[(int)((size+CHUNK_SIZE-1)>>>CHUNK_BITS)];
+			
+			for (int i=0;i<chunks.length;++i) {
+				long position = (long)i<<CHUNK_BITS;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size-position));
+			}
+		}
+		
+		//mapping stays valid after channel is closed
+		LineScanner scanner = new LineScanner();
+		scanner.scan(chunks);
+		
+		return new MappedContent(chunks, charset, scanner, table);
+	}
+	
+	private MappedContent(MappedByteBuffer[] chunks, Charset charset, LineScanner scanner, MappedTokenTable table) {
+		super(scanner.count);
+		
+		this.chunks = chunks;
+		this.charset = charset;
+		this.table = table;
+		
+		offsets = Arrays.copyOf(scanner.offsets, scanner.count);
+		lengths = Arrays.copyOf(scanner.lengths, scanner.count);
+		
+		tokenIds = table.assignIds(this, scanner.hashes);
+		
+		//hashes of line bytes - equal lines give equal hash regardless of table
+		hash = 1;
+		
+		for (int i=0;i<scanner.count;++i) {
+			hash = hash*31+scanner.hashes[i];
+		}
+	}
+	
+	/**
+	 * Decode line from mapped file.
+	 */
+	@Override
+	public String getItem(int index) {
+		byte[] bytes = new byte[lengths[index]];
+		long offset = offsets[index];
+		
+		for (int i=0;i<bytes.length;++i) {
+			bytes[i] = byteAt(offset+i);
+		}
+		
+		return new String(bytes, charset);
+	}
+	
+	/**
+	 * Decodes all lines - expensive, avoid for big files.
+	 */
+	@Override
+	public String[] getItems() {
+		String[] res = new String[length()];
+		
+		for (int i=0;i<res.length;++i) {
+			res[i] = getItem(i);
+		}
+		
+		return res;
+	}
+	
+	@Override
+	public int[] getTokenIds() {
+		return tokenIds;
+	}
+	
+	/**
+	 * Table which assigned token IDs.
+	 * @return
+	 */
+	public MappedTokenTable getTokenTable() {
+		return table;
+	}
+	
+	@Override
+	public boolean sharesTokenIds(Content other) {
+		return other instanceof MappedContent && ((MappedContent)other).table==table;
+	}
+	
+	/**
+	 * Contents are equal when they have the same lines.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof MappedContent)) {
+			return super.equals(other);
+		}
+		
+		MappedContent otherContent = (MappedContent)other;
+		
+		if (otherContent.length()!=length()) {
+			return false;
+		}
+		
+		for (int i=0;i<length();++i) {
+			if (sharesTokenIds(otherContent) ? tokenIds[i]!=otherContent.tokenIds[i] : !itemEquals(i, otherContent, i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Hash of line bytes, consistent with equals().
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	/**
+	 * 128-bit fingerprint of lines computed from bytes of mapped file (see ComparisonCache) - by hash of each line
+	 * and by own 64-bit hash of all bytes. It is computed once, no String is created.
+	 * @return two longs
+	 */
+	long[] fingerprint() {
+		long[] res = fingerprint;
+		
+		if (res!=null) {
+			return res;
+		}
+		
+		long first = ~(long)length();
+		long second = ~(long)length();
+		
+		for (int i=0;i<length();++i) {
+			int lineHash = 0;
+			long offset = offsets[i];
+			
+			second = (second^lengths[i])*0x100000001B3L;
+			
+			for (int j=0;j<lengths[i];++j) {
+				byte b = byteAt(offset+j);
+				
+				lineHash = lineHash*31+b;
+				second = (second^(b&0xFF))*0x100000001B3L;
+			}
+			
+			first = (first+lineHash)*0x9E3779B97F4A7C15L;
+			first ^= first>>>31;
+		}
+		
+		fingerprint = new long[] {first, second};
+		
+		return fingerprint;
+	}
+	
+	/**
+	 * Compare bytes of item with item of other content.
+	 */
+	boolean itemEquals(int index, MappedContent other, int otherIndex) {
+		int length = lengths[index];
+		
+		if (length!=other.lengths[otherIndex]) {
+			return false;
+		}
+		
+		long offset = offsets[index];
+		long otherOffset = other.offsets[otherIndex];
+		
+		for (int i=0;i<length;++i) {
+			if (byteAt(offset+i)!=other.byteAt(otherOffset+i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private byte byteAt(long position) {
+		return chunks[(int)(position>>>CHUNK_BITS)].get((int)(position&CHUNK_MASK));
+	}
+	
+	/**
+	 * Finds lines and their hashes in one pass over mapped chunks.
+	 */
+	private static class LineScanner {
+		
+		long[] offsets = new long[1024];
+		int[] lengths = new int[1024];
+		int[] hashes = new int[1024];
+		int count;
+		
+		void scan(MappedByteBuffer[] chunks) {
+			long position = 0;
+			long begin = 0;
+			int hash = 0;
+			byte last = 0;
+			
+			for (MappedByteBuffer chunk : chunks) {
+				int limit = chunk.limit();
+				
+				for (int i=0;i<limit;++i, ++position) {
+					byte b = chunk.get(i);
+					
+					if (b=='\n') {
+						add(begin, position, hash, last);
+						begin = position+1;
+						hash = 0;
+						last = 0;
+					} else {
+						//hash of previous byte - trailing '\r' must not be part of hash
+						if (position>begin) {
+							hash = hash*31+last;
+						}
+						
+						last = b;
+					}
+				}
+			}
+			
+			if (position>begin) {
+				add(begin, position, hash, last);
+			}
+		}
+		
+		private void add(long begin, long end, int hash, byte last) {
+			long length = end-begin;
+			
+			if (length>0) {
+				if (last=='\r') {
+					--length;
+				} else {
+					hash = hash*31+last;
+				}
+			}
+			
+			if (length>Integer.MAX_VALUE) {
+				throw new RuntimeException("Line at offset "+begin+" is too long!");
+			}
+			
+			if (count==offsets.length) {
+				offsets = Arrays.copyOf(offsets, count*2);
+				lengths = Arrays.copyOf(lengths, count*2);
+				hashes = Arrays.copyOf(hashes, count*2);
+			}
+			
+			offsets[count] = begin;
+			lengths[count] = (int)length;
+			hashes[count] = hash;
+			++count;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator;
+
+import java.util.Arrays;
+
+/**
+ * Assigns integer IDs to items of MappedContent without creating Strings. Items are looked up by their precomputed
+ * hash, equality is verified by comparing bytes of mapped files. Contents sharing the table share token IDs
+ * (see Content.sharesTokenIds()), so they are compared by integers.
+ * Table keeps reference to content holding first occurrence of each token - it should live only as long as contents do.
+ * This class is threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class MappedTokenTable {
+
+	//open addressing table of ID+1, 0 is empty slot
+	private int[] slots = new int[64];
+	
+	private int[] hashes = new int[16];
+	private MappedContent[] owners = new MappedContent[16];
+	private int[] ownerIndexes = new int[16];
+	private int size;
+	
+	/**
+	 * Number of distinct tokens.
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * Assign IDs to all items of content.
+	 * @param content
+	 * @param hashes precomputed hashes of items
+	 * @return IDs array of the same length as content
+	 */
+	synchronized int[] assignIds(MappedContent content, int[] itemHashes) {
+		int[] res = new int[content.length()];
+		
+		for (int i=0;i<res.length;++i) {
+			res[i] = getId(content, i, itemHashes[i]);
+		}
+		
+		return res;
+	}
+	
+	private int getId(MappedContent content, int index, int hash) {
+		int mask = slots.length-1;
+		int slot = mix(hash)&mask;
+		
+		while (slots[slot]!=0) {
+			int id = slots[slot]-1;
+			
+			if (hashes[id]==hash && content.itemEquals(index, owners[id], ownerIndexes[id])) {
+				return id;
+			}
+			
+			slot = (slot+1)&mask;
+		}
+		
+		if (size==hashes.length) {
+			hashes = Arrays.copyOf(hashes, size*2);
+			owners = Arrays.copyOf(owners, size*2);
+			ownerIndexes = Arrays.copyOf(ownerIndexes, size*2);
+		}
+		
+		int id = size++;
+		
+		hashes[id] = hash;
+		owners[id] = content;
+		ownerIndexes[id] = index;
+		slots[slot] = id+1;
+		
+		//keep load factor under 1/2
+		if (size*2>slots.length) {
+			rehash();
+		}
+		
+		return id;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length*2];
+		
+		int mask = slots.length-1;
+		
+		for (int id=0;id<size;++id) {
+			int slot = mix(hashes[id])&mask;
+			
+			while (slots[slot]!=0) {
+				slot = (slot+1)&mask;
+			}
+			
+			slots[slot] = id+1;
+		}
+	}
+	
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		
+		return hash^(hash>>>16);
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator;
+
+import cz.nalezen.diffator.utils.IntRange;
+
+/**
+ * Forwards events of comparison of slices (parts of contents) as events of whole contents - ranges are shifted.
+ * @author Jaroslav Kubos
+ *
+ */
+class ShiftingHandler implements DiffEventsHandler {
+	
+	private DiffEventsHandler consumer;
+	private Content left;
+	private int shiftA;
+	private Content right;
+	private int shiftB;
+	
+	private IntRange range = new IntRange();
+	
+	ShiftingHandler(DiffEventsHandler consumer, Content left, int shiftA, Content right, int shiftB) {
+		this.consumer = consumer;
+		this.left = left;
+		this.shiftA = shiftA;
+		this.right = right;
+		this.shiftB = shiftB;
+	}
+	
+	@Override
+	public void onBeforeStart() {
+	}
+	
+	@Override
+	public void handle(Content content, IntRange range, EventType eventType, EventSide eventSide) {
+		int shift = eventSide==EventSide.LEFT ? shiftA : shiftB;
+		this.range.initialize(range.getBegin()+shift, range.getEnd()+shift);
+		
+		consumer.handle(eventSide==EventSide.LEFT ? left : right, this.range, eventType, eventSide);
+	}
+	
+	@Override
+	public void onDone(double similarity) {
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary assigning integer IDs to tokens (items of Content). Same token gets always same ID, so contents
+ * encoded by the same dictionary may be compared by integers instead of String.equals().
+ * This class is threadsafe - lookup of known token is lock free, only assignment of new ID is synchronized.
+ * @author Jaroslav Kubos
+ *
+ */
+public class TokenDictionary {
+
+	private static final TokenDictionary sharedInstance = new TokenDictionary();
+
+	/**
+	 * Dictionary shared by whole application. Keep in mind it is never cleaned - for unbounded vocabularies
+	 * use own instance with limited lifespan.
+	 * @return
+	 */
+	public static TokenDictionary getShared() {
+		return sharedInstance;
+	}
+
+	private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private volatile String[] tokens = new String[16];
+	private volatile int size;
+
+	/**
+	 * Get ID of token, assign new one when token is not known yet.
+	 * @param token
+	 * @return ID in range 0<=X<size()
+	 */
+	public int getId(String token) {
+		Integer id = ids.get(token);
+
+		if (id!=null) {
+			return id;
+		}
+
+		return assignId(token);
+	}
+
+	/**
+	 * Get ID of token without assigning new one.
+	 * @param token
+	 * @return ID or -1 when token is not known
+	 */
+	public int findId(String token) {
+		Integer id = ids.get(token);
+
+		return id!=null ? id : -1;
+	}
+
+	/**
+	 * Get IDs of all items.
+	 * @param items
+	 * @return new array of the same length as items
+	 */
+	public int[] getIds(String[] items) {
+		int[] res = new int[items.length];
+
+		for (int i=0;i<items.length;++i) {
+			res[i] = getId(items[i]);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Get IDs of all items.
+	 * @param items
+	 * @return new array of the same length as items
+	 */
+	public int[] getIds(List<String> items) {
+		int[] res = new int[items.size()];
+
+		int i = 0;
+
+		for (String item : items) {
+			res[i++] = getId(item);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Reverse lookup of token by its ID.
+	 * @param id ID returned by getId()
+	 * @return
+	 */
+	public String getToken(int id) {
+		if (id<0 || id>=size) {
+			throw new IllegalArgumentException("Unknown token ID "+id+"!");
+		}
+
+		return tokens[id];
+	}
+
+	/**
+	 * Number of known tokens.
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Slow path - token was not found, so it is added under lock.
+	 * @param token
+	 * @return
+	 */
+	private synchronized int assignId(String token) {
+		Integer id = ids.get(token);
+
+		//other thread was faster
+		if (id!=null) {
+			return id;
+		}
+
+		String[] actTokens = tokens;
+
+		if (size==actTokens.length) {
+			String[] newTokens = new String[actTokens.length*2];
+			System.arraycopy(actTokens, 0, newTokens, 0, size);
+			actTokens = newTokens;
+		}
+
+		int newId = size;
+
+		//publish token before ID becomes visible by map
+		actTokens[newId] = token;
+		tokens = actTokens;
+		size = newId+1;
+
+		ids.put(token, newId);
+
+		return newId;
+	}
+}
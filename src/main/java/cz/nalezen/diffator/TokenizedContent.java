@@ -0,0 +1,89 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator;
+
+import java.util.List;
+
+/**
+ * Content holding also integer IDs of its items assigned by TokenDictionary. When both compared contents
+ * share the dictionary, comparison implementations compare IDs instead of Strings.
+ * @author Jaroslav Kubos
+ *
+ */
+public class TokenizedContent extends Content {
+
+	private int[] tokenIds;
+	private TokenDictionary dictionary;
+
+	/**
+	 * Construct content using shared dictionary - see TokenDictionary.getShared().
+	 * @param items items of content (words/lines/blocks)
+	 */
+	public TokenizedContent(String[] items) {
+		this(items, TokenDictionary.getShared());
+	}
+
+	/**
+	 * Construct content by keeping reference do delivered items array, IDs are assigned by given dictionary.
+	 * @param items items of content (words/lines/blocks)
+	 * @param dictionary dictionary assigning IDs
+	 */
+	public TokenizedContent(String[] items, TokenDictionary dictionary) {
+		super(items);
+
+		this.dictionary = dictionary;
+		tokenIds = dictionary.getIds(items);
+	}
+
+	/**
+	 * Construct content from items and their already assigned IDs - no lookup is done.
+	 * @param items items of content (words/lines/blocks)
+	 * @param tokenIds IDs of items, same length as items
+	 * @param dictionary dictionary which assigned IDs
+	 */
+	public TokenizedContent(String[] items, int[] tokenIds, TokenDictionary dictionary) {
+		super(items);
+
+		if (tokenIds.length!=items.length) {
+			throw new IllegalArgumentException("Count of IDs differs from count of items!");
+		}
+
+		this.dictionary = dictionary;
+		this.tokenIds = tokenIds;
+	}
+
+	/**
+	 * Constructs content from List. Same as Content(List) it copies items to new array.
+	 * @param items items of content (words/lines/blocks)
+	 * @param dictionary dictionary assigning IDs
+	 */
+	public TokenizedContent(List<String> items, TokenDictionary dictionary) {
+		super(items);
+
+		this.dictionary = dictionary;
+		tokenIds = dictionary.getIds(getItems());
+	}
+
+	@Override
+	public int[] getTokenIds() {
+		return tokenIds;
+	}
+
+	@Override
+	public TokenDictionary getTokenDictionary() {
+		return dictionary;
+	}
+}
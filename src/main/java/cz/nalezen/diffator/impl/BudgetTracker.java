@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.ComparisonBudget;
+
+/**
+ * Work done by single comparison limited by ComparisonBudget. Once exhausted it stays exhausted.
+ * @author Jaroslav Kubos
+ *
+ */
+class BudgetTracker {
+
+	private long remainingCells;
+	private final long deadline;
+	private final boolean timed;
+	private boolean exhausted;
+	
+	BudgetTracker(ComparisonBudget budget) {
+		remainingCells = budget.getMaxCells();
+		timed = budget.getTimeoutNanos()!=ComparisonBudget.UNLIMITED;
+		deadline = timed ? System.nanoTime()+budget.getTimeoutNanos() : 0;
+	}
+	
+	/**
+	 * Check whether work of given count of cells may be done, without charging it.
+	 */
+	boolean canAfford(long cells) {
+		if (exhausted || cells>remainingCells || (timed && System.nanoTime()-deadline>0)) {
+			exhausted = true;
+		}
+		
+		return !exhausted;
+	}
+	
+	/**
+	 * Charge work of given count of cells.
+	 * @return false when budget is exhausted - work must not be done
+	 */
+	boolean charge(long cells) {
+		if (!canAfford(cells)) {
+			return false;
+		}
+		
+		remainingCells -= cells;
+		
+		return true;
+	}
+	
+	boolean isExhausted() {
+		return exhausted;
+	}
+}
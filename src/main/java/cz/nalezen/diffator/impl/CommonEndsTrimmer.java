@@ -0,0 +1,190 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+import cz.nalezen.diffator.utils.SuffixAutomaton;
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Strips identical beginning and end of compared contents before comparison context is initialized. Common part
+ * is stripped only when it is the longest common substring (verified by suffix automaton in linear time), so
+ * recursion would pick it first anyway - events and similarity stay exactly the same as without stripping.
+ * Object may be reused by subsequent comparisons.
+ * @author Jaroslav Kubos
+ *
+ */
+class CommonEndsTrimmer {
+
+	private int prefixLength;
+	private int prefixBeginA;
+	private int prefixBeginB;
+	
+	private int suffixLength;
+	private int suffixBeginA;
+	private int suffixBeginB;
+	
+	//stripped parts in order as recursion would pick them - at most prefix and suffix
+	private double[] ratios = new double[2];
+	private double[] weights = new double[2];
+	private int count;
+	
+	//helpers reused by next trimming
+	private int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	private SuffixAutomaton automaton;
+	
+	/**
+	 * Strip common beginning and end.
+	 * @param a left content
+	 * @param rangeA whole range of left content, shrunk to the rest
+	 * @param b right content
+	 * @param rangeB whole range of right content, shrunk to the rest
+	 * @param minBlockSize smaller common parts are not stripped
+	 * @param overlap helper object
+	 */
+	void trim(Content a, IntRange rangeA, Content b, IntRange rangeB, int minBlockSize, Overlap overlap) {
+		prefixLength = 0;
+		suffixLength = 0;
+		count = 0;
+		
+		boolean encoded = false;
+		
+		while (!rangeA.isEmpty() && !rangeB.isEmpty()) {
+			int maxCommon = Math.min(rangeA.length(), rangeB.length());
+			
+			int prefix = 0;
+			
+			while (prefix<maxCommon && same(a, rangeA.getBegin()+prefix, b, rangeB.getBegin()+prefix)) {
+				++prefix;
+			}
+			
+			int suffix = 0;
+			
+			while (suffix<maxCommon-prefix && same(a, rangeA.getEnd()-1-suffix, b, rangeB.getEnd()-1-suffix)) {
+				++suffix;
+			}
+			
+			boolean prefixUsable = prefix>0 && prefix>=minBlockSize;
+			boolean suffixUsable = suffix>0 && suffix>=minBlockSize;
+			
+			if (!prefixUsable && !suffixUsable) {
+				return;
+			}
+			
+			if (!encoded) {
+				encoder.encodeReusing(a, b, ids);
+				encoded = true;
+			}
+			
+			if (automaton==null) {
+				automaton = new SuffixAutomaton();
+			}
+			
+			//what would recursion pick?
+			overlap.clean();
+			automaton.build(ids[1], rangeB.getBegin(), rangeB.getEnd());
+			automaton.findLongestCommon(ids[0], rangeA.getBegin(), rangeA.getEnd(), overlap);
+			
+			double ratio = overlap.getA().length()/(double)Math.max(rangeA.length(), rangeB.length());
+			
+			if (prefixUsable && overlap.getA().length()==prefix 
+					&& overlap.getA().getBegin()==rangeA.getBegin() && overlap.getB().getBegin()==rangeB.getBegin()) {
+				
+				prefixLength = prefix;
+				prefixBeginA = rangeA.getBegin();
+				prefixBeginB = rangeB.getBegin();
+				
+				//same as afterMaxPart in recursion
+				double weight = Math.max((rangeA.length()-prefix)/(double)rangeA.length(), (rangeB.length()-prefix)/(double)rangeB.length());
+				add(ratio, weight);
+				
+				rangeA.initialize(rangeA.getBegin()+prefix, rangeA.getEnd());
+				rangeB.initialize(rangeB.getBegin()+prefix, rangeB.getEnd());
+				
+			} else if (suffixUsable && overlap.getA().length()==suffix 
+					&& overlap.getA().getEnd()==rangeA.getEnd() && overlap.getB().getEnd()==rangeB.getEnd()) {
+				
+				suffixLength = suffix;
+				suffixBeginA = rangeA.getEnd()-suffix;
+				suffixBeginB = rangeB.getEnd()-suffix;
+				
+				//same as beforeMaxPart in recursion
+				double weight = Math.max((rangeA.length()-suffix)/(double)rangeA.length(), (rangeB.length()-suffix)/(double)rangeB.length());
+				add(ratio, weight);
+				
+				rangeA.initialize(rangeA.getBegin(), rangeA.getEnd()-suffix);
+				rangeB.initialize(rangeB.getBegin(), rangeB.getEnd()-suffix);
+				
+			} else {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Combine similarity of the rest with stripped parts - same arithmetic as recursion does.
+	 * @param restSimilarity
+	 * @return
+	 */
+	double foldSimilarity(double restSimilarity) {
+		double res = restSimilarity;
+		
+		for (int i=count-1;i>=0;--i) {
+			res = ratios[i]+weights[i]*res;
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Set ranges to stripped beginning.
+	 * @return false when nothing was stripped
+	 */
+	boolean getPrefix(IntRange rangeA, IntRange rangeB) {
+		rangeA.initialize(prefixBeginA, prefixBeginA+prefixLength);
+		rangeB.initialize(prefixBeginB, prefixBeginB+prefixLength);
+		
+		return prefixLength>0;
+	}
+	
+	/**
+	 * Set ranges to stripped end.
+	 * @return false when nothing was stripped
+	 */
+	boolean getSuffix(IntRange rangeA, IntRange rangeB) {
+		rangeA.initialize(suffixBeginA, suffixBeginA+suffixLength);
+		rangeB.initialize(suffixBeginB, suffixBeginB+suffixLength);
+		
+		return suffixLength>0;
+	}
+	
+	private void add(double ratio, double weight) {
+		ratios[count] = ratio;
+		weights[count] = weight;
+		++count;
+	}
+	
+	private static boolean same(Content a, int indA, Content b, int indB) {
+		if (a.sharesTokenIds(b)) {
+			return a.getTokenIds()[indA]==b.getTokenIds()[indB];
+		}
+		
+		return a.getItem(indA).equals(b.getItem(indB));
+	}
+}
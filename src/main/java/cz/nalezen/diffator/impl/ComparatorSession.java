@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.ComparisonBudget;
+import cz.nalezen.diffator.ComparisonResult;
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.DiffEventsHandler;
+import cz.nalezen.diffator.utils.BitParallelLcs;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Comparison session keeping all comparison related data (context, helper objects, buffers) between comparisons.
+ * Buffers only grow when needed, so repeated comparisons of similar sized contents allocate nothing. Contents without 
+ * shared token IDs are encoded once per comparison (by CommonEndsTrimmer and context together) into reused primitive 
+ * table and arrays - only growth of buffers allocates.
+ * Session is not threadsafe - each thread should use own one. Keep in mind session holds buffers for the biggest
+ * compared contents until it is released.
+ * @author Jaroslav Kubos
+ *
+ * @param <T> Type for comparison calculation data
+ */
+public class ComparatorSession<T extends ContentsComparatorContext> {
+
+	ContentsComparatorImpl<T> impl;
+	T context;
+	
+	Overlap overlap = new Overlap();
+	IntRange rangeA = new IntRange();
+	IntRange rangeB = new IntRange();
+	IntRange commonA = new IntRange();
+	IntRange commonB = new IntRange();
+	
+	IntervalsStack stack = new IntervalsStack();
+	CommonEndsTrimmer trimmer = new CommonEndsTrimmer();
+	TokenEncoder encoder = new TokenEncoder();
+	
+	BitParallelLcs lcs;
+	
+	/**
+	 * Use ContentsComparatorImpl.createSession()
+	 * @param impl
+	 */
+	ComparatorSession(ContentsComparatorImpl<T> impl) {
+		this.impl = impl;
+		
+		context = impl.createContext();
+		
+		//trimmer and context share encoding
+		trimmer.encoder = encoder;
+		
+		if (context instanceof TokenEncodingContext) {
+			((TokenEncodingContext)context).setEncoder(encoder);
+		}
+	}
+	
+	/**
+	 * Compares two contents - same as ContentsComparatorImpl.compare() but reusing data of this session.
+	 * @param a left content
+	 * @param b right content
+	 * @param consumer callback (may be null)
+	 * @param minBlockSize when block of content is smaller that this it is considered as different
+	 * @return
+	 */
+	public double compare(Content a, Content b, DiffEventsHandler consumer, int minBlockSize) {
+		return impl.compare(a, b, consumer, minBlockSize, this);
+	}
+	
+	/**
+	 * Compares two contents with abort when result can't reach minExpectation - see ContentsComparatorImpl.compareWithExpectation().
+	 */
+	public double compareWithExpectation(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, double minExpectation) {
+		return impl.compareWithExpectation(a, b, consumer, minBlockSize, minExpectation, this);
+	}
+	
+	/**
+	 * Compares two contents with limited work - see ContentsComparatorImpl.compareWithBudget().
+	 */
+	public ComparisonResult compareWithBudget(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ComparisonBudget budget) {
+		return impl.compareWithBudget(a, b, consumer, minBlockSize, budget, this);
+	}
+	
+	/**
+	 * Score-only computation of this session - created on first use.
+	 * @return
+	 */
+	public BitParallelLcs getLcs() {
+		if (lcs==null) {
+			lcs = new BitParallelLcs();
+		}
+		
+		return lcs;
+	}
+	
+	/**
+	 * Token encoder shared by trimmer and context of this session - its table may be used between comparisons.
+	 * @return
+	 */
+	public TokenEncoder getEncoder() {
+		return encoder;
+	}
+	
+	/**
+	 * Implementation used by this session.
+	 * @return
+	 */
+	public ContentsComparatorImpl<T> getImpl() {
+		return impl;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import java.util.Arrays;
+
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Base of data for implementations which align whole contents at once during initialization (e.g. MyersImpl).
+ * Alignment is stored as sorted list of common runs. Longest substring search then only picks longest run
+ * within searched area, so recursion of ContentsComparatorImpl produces events and similarity the usual way.
+ * @author Jaroslav Kubos
+ *
+ */
+public abstract class ContentsComparatorAlignmentImplContext implements ContentsComparatorContext {
+
+	int[] runsA = new int[16];
+	int[] runsB = new int[16];
+	int[] runsLength = new int[16];
+	int runsCount;
+	
+	/**
+	 * Remove all runs.
+	 */
+	protected void clearRuns() {
+		runsCount = 0;
+	}
+	
+	/**
+	 * Add common run. Runs must be added in order - each one after previous in both contents. 
+	 * Run adjacent to previous one is merged with it.
+	 * @param beginA begin in left content
+	 * @param beginB begin in right content
+	 * @param length
+	 */
+	protected void addRun(int beginA, int beginB, int length) {
+		if (length<1) {
+			return;
+		}
+		
+		if (runsCount>0) {
+			int last = runsCount-1;
+			
+			if (runsA[last]+runsLength[last]==beginA && runsB[last]+runsLength[last]==beginB) {
+				runsLength[last] += length;
+				return;
+			}
+		}
+		
+		if (runsCount==runsA.length) {
+			runsA = Arrays.copyOf(runsA, runsCount*2);
+			runsB = Arrays.copyOf(runsB, runsCount*2);
+			runsLength = Arrays.copyOf(runsLength, runsCount*2);
+		}
+		
+		runsA[runsCount] = beginA;
+		runsB[runsCount] = beginB;
+		runsLength[runsCount] = length;
+		++runsCount;
+	}
+	
+	/**
+	 * Number of common runs.
+	 * @return
+	 */
+	public int getRunsCount() {
+		return runsCount;
+	}
+	
+	/**
+	 * Find longest run within given area, first one wins. Runs are clipped by area.
+	 * @param rangeA Search area in left content
+	 * @param rangeB Search area in right content
+	 * @param res Overlap where is stored result
+	 */
+	public void findLongestRun(IntRange rangeA, IntRange rangeB, Overlap res) {
+		int maxLen = 0;
+		
+		//first run which may intersect area
+		int low = 0;
+		int high = runsCount;
+		
+		while (low<high) {
+			int mid = (low+high)>>>1;
+			
+			if (runsA[mid]+runsLength[mid]<=rangeA.getBegin()) {
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		for (int r=low;r<runsCount && runsA[r]<rangeA.getEnd();++r) {
+			int skip = Math.max(0, Math.max(rangeA.getBegin()-runsA[r], rangeB.getBegin()-runsB[r]));
+			
+			int beginA = runsA[r]+skip;
+			int beginB = runsB[r]+skip;
+			
+			int length = Math.min(runsLength[r]-skip, Math.min(rangeA.getEnd()-beginA, rangeB.getEnd()-beginB));
+			
+			if (length>maxLen) {
+				maxLen = length;
+				
+				res.getA().initialize(beginA, beginA+length);
+				res.getB().initialize(beginB, beginB+length);
+			}
+		}
+	}
+}
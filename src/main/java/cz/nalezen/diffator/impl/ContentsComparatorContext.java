@@ -16,6 +16,7 @@
 package cz.nalezen.diffator.impl;
 
 import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
 
 /**
  * 
@@ -25,9 +26,12 @@ import cz.nalezen.diffator.Content;
 public interface ContentsComparatorContext {
 	
 	/**
-	 * Initialize this context by two contents
+	 * Initialize this context by two contents. Only given ranges of contents are searched later, so data outside them
+	 * need not be prepared.
 	 * @param a
+	 * @param rangeA
 	 * @param b
+	 * @param rangeB
 	 */
-	void initialize(Content a, Content b);
+	void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB);
 }
@@ -15,15 +15,12 @@
 
 package cz.nalezen.diffator.impl;
 
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
-
 import cz.nalezen.diffator.Content;
 import cz.nalezen.diffator.utils.IntRange;
 import cz.nalezen.diffator.utils.Overlap;
 
 /**
- * Implementation using sparse array - implemented as list of hashmap. So every row exists but just some data in columns.
+ * Implementation using sparse array - implemented as compressed sparse rows. So every row exists but just some data in columns.
  * @author Jaroslav Kubos
  *
  */
@@ -38,25 +35,28 @@ public class ContentsComparatorHashImpl extends ContentsComparatorImpl<ContentsC
 	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorHashImplContext context) {
 		int maxLen = 0;
 		
+		int[] rowOffsets = context.getRowOffsets();
+		int[] columns = context.getColumns();
+		int[] lengths = context.getLengths();
+		
 		for (int i = rangeA.getBegin()+1; i <= rangeA.getEnd(); i++) {
 			
-			LinkedHashMap<Integer, Integer> row = context.getBuffer().get(i);
-			
 			int maxLenA = i-rangeA.getBegin();
+			int row = i-context.getOffsetA();
+			int rowEnd = rowOffsets[row+1];
 			
-	        for (Entry<Integer, Integer> e : row.entrySet()) {
+			//jump directly to first column within rangeB
+	        for (int k = context.findFirstCell(row, rangeB.getBegin()+1); k < rowEnd; k++) {
 	        	
-	        	if (e.getKey()<rangeB.getBegin()+1) {
-	        		continue;
-	        	} else if (e.getKey()>rangeB.getEnd()) {
+	        	int j = columns[k];
+	        	
+	        	if (j>rangeB.getEnd()) {
 	        		break;
 	        	}
 	        	
-	        	int j = e.getKey();
-	        	
 	        	int maxLenB = j-rangeB.getBegin();
 	                
-	            int adjLen = Math.min(Math.min(maxLenA, maxLenB),  e.getValue()); 
+	            int adjLen = Math.min(Math.min(maxLenA, maxLenB),  lengths[k]); 
 	        	
 	            if (adjLen > maxLen) {
 	                maxLen = adjLen;
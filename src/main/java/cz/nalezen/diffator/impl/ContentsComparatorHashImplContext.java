@@ -15,65 +15,149 @@
 
 package cz.nalezen.diffator.impl;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-
 import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.PositionIndex;
+import cz.nalezen.diffator.utils.TokenEncoder;
 
 /**
- * Data for HashImpl.
+ * Data for HashImpl. Sparse matrix is stored in compressed sparse row format - for each row there are sorted 
+ * column indexes and lengths of common substrings ending in given cell. Only non-zero cells are stored.
+ * Row i belongs to item offsetA+i-1 of left content, column j to item j-1 of right content.
  * @author Jaroslav Kubos
  *
  */
-public class ContentsComparatorHashImplContext implements ContentsComparatorContext {
+public class ContentsComparatorHashImplContext implements ContentsComparatorContext, TokenEncodingContext {
 
-	ArrayList<LinkedHashMap<Integer, Integer>> buffer;
+	int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	PositionIndex index = new PositionIndex();
+	
+	/**
+	 * Cells of row i are stored in columns/lengths in interval rowOffsets[i]<=X<rowOffsets[i+1]
+	 */
+	int[] rowOffsets;
+	int[] columns;
+	int[] lengths;
+	int size;
+	
+	int offsetA;
 	
 	@Override
-	public void initialize(Content a, Content b) {
-		buffer = new ArrayList<>(a.length());
+	public void setEncoder(TokenEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
+	@Override
+	public void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		encoder.encodeReusing(a, b, ids);
 		
-		//define all rows
-		for (int i=0;i<a.length()+1;++i) {
-			buffer.add(new LinkedHashMap<Integer, Integer>());
-		}
+		offsetA = rangeA.getBegin();
+		
+		//positions of tokens in right content
+		index.build(ids[1], rangeB.getBegin(), rangeB.getEnd());
 		
 		//build matrix
-		calculateSubstringsLength(a, b);
+		calculateSubstringsLength(ids[0], rangeA, index);
+	}
+	
+	public int getOffsetA() {
+		return offsetA;
+	}
+	
+	public int[] getRowOffsets() {
+		return rowOffsets;
+	}
+	
+	public int[] getColumns() {
+		return columns;
 	}
 	
-	public ArrayList<LinkedHashMap<Integer, Integer>> getBuffer() {
-		return buffer;
+	public int[] getLengths() {
+		return lengths;
+	}
+	
+	/**
+	 * Binary search for first cell in row having column equal or greater than given one.
+	 * @param row 
+	 * @param column
+	 * @return index to columns/lengths, rowOffsets[row+1] when there is no such cell
+	 */
+	public int findFirstCell(int row, int column) {
+		int low = rowOffsets[row];
+		int high = rowOffsets[row+1];
+		
+		while (low<high) {
+			int mid = (low+high)>>>1;
+			
+			if (columns[mid]<column) {
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
 	}
 	
 	/**
 	 * http://en.wikibooks.org/w/index.php?title=Algorithm_Implementation/Strings/Longest_common_substring&stable=1
-	 * only non-zero values stored
+	 * only non-zero values stored. Cells of each row are taken from index of right content, so only matching cells are visited.
 	 */
-	private void calculateSubstringsLength(Content a, Content b) {		
-		for (int i=1;i<=a.length();i++) {
-		    for (int j=1;j<=b.length();j++) {
-		        if (a.getItem(i-1).equals(b.getItem(j-1))) {
-		        	
-		        	LinkedHashMap<Integer, Integer> row = buffer.get(i);
+	private void calculateSubstringsLength(int[] idsA, IntRange rangeA, PositionIndex index) {
+		int[] positions = index.getPositions();
+		
+		//exact count of cells - no reallocation during build
+		int count = 0;
+		
+		for (int i=rangeA.getBegin();i<rangeA.getEnd();i++) {
+			count += index.count(idsA[i]);
+		}
+		
+		//buffers are reused by next initialization when big enough
+		if (rowOffsets==null || rowOffsets.length<rangeA.length()+2) {
+			rowOffsets = new int[rangeA.length()+2];
+		}
+		
+		if (columns==null || columns.length<count) {
+			columns = new int[count];
+			lengths = new int[count];
+		}
+		
+		rowOffsets[0] = 0;
+		rowOffsets[1] = 0;
+		size = 0;
 		
-		            if (i==1 || j==1) {
-		            	row.put(j, 1);
-		            }
-		            else {
-		            	LinkedHashMap<Integer, Integer> rowBef = buffer.get(i-1);
-		            	
-		            	Integer v = rowBef.get(j-1);
-		            	
-		            	if (v==null) {
-		            		v = 0;
-		            	}
-		            	
-		            	row.put(j, v+1);
-		            }
-		        }
-		    }
-		}	    
+		for (int i=1;i<=rangeA.length();i++) {
+			//cursor in previous row - columns are sorted so it only moves forward
+			int prev = rowOffsets[i-1];
+			int prevEnd = rowOffsets[i];
+			
+			int slot = index.find(idsA[offsetA+i-1]);
+			
+			if (slot>=0) {
+				for (int k=index.getStart(slot);k<index.getEnd(slot);k++) {
+					int j = positions[k]+1;
+					int length = 1;
+					
+					//cell before in previous row exists only for columns within indexed range
+					if (i>1) {
+						while (prev<prevEnd && columns[prev]<j-1) {
+							++prev;
+						}
+						
+						if (prev<prevEnd && columns[prev]==j-1) {
+							length = lengths[prev]+1;
+						}
+					}
+					
+					columns[size] = j;
+					lengths[size] = length;
+					++size;
+				}
+			}
+			
+			rowOffsets[i+1] = size;
+		}
 	}
-
 }
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Implementation aligning contents by anchors - rare tokens present in both contents (histogram/patience diff). 
+ * Quadratic search is done only inside small gaps between anchors, so it is fast for big contents with many repeated 
+ * tokens and produces readable blocks. Similarity is reported in the same scale as by other implementations, 
+ * though it may differ because runs follow anchors rather than longest substrings.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorHistogramImpl extends ContentsComparatorImpl<ContentsComparatorHistogramImplContext> {
+
+	@Override
+	protected ContentsComparatorHistogramImplContext createContext() {
+		return new ContentsComparatorHistogramImplContext();
+	}
+
+	@Override
+	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorHistogramImplContext context) {
+		context.findLongestRun(rangeA, rangeB, res);
+	}
+}
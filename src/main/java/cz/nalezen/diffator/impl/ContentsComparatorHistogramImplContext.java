@@ -0,0 +1,339 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import java.util.Arrays;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+import cz.nalezen.diffator.utils.PositionIndex;
+import cz.nalezen.diffator.utils.SuffixAutomaton;
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Data for HistogramImpl. Contents are aligned by anchors - tokens occurring in both contents as few times as possible
+ * (ideally once - as in patience diff). Longest increasing chain of anchor pairs is found in O(n*log(n)), gaps between 
+ * anchors are aligned recursively. Gaps without rare tokens are aligned by repeated longest substring search - small ones
+ * by LowMemImpl, big ones by suffix automaton in linear time per search.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorHistogramImplContext extends ContentsComparatorAlignmentImplContext implements TokenEncodingContext {
+
+	int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	
+	/**
+	 * Tokens occurring more times are not used as anchors.
+	 */
+	static final int MAX_OCCURRENCES = 64;
+	
+	/**
+	 * Gaps having less cells (M*N) are aligned by LowMemImpl, bigger ones by suffix automaton.
+	 */
+	static final int SMALL_GAP_CELLS = 4096;
+	
+	//kinds of fallback stack frames
+	private static final int FALLBACK_AREA = 0;
+	private static final int FALLBACK_RUN = 1;
+	
+	int[] idsA;
+	int[] idsB;
+	
+	//chain of anchor pairs - reused by recursion levels since each level consumes its chain before descending
+	int[] pairsA = new int[16];
+	int[] pairsB = new int[16];
+	int[] pairsPrev = new int[16];
+	int[] tails = new int[16];
+	
+	Content a;
+	Content b;
+	
+	ContentsComparatorLowMemImpl fallback = new ContentsComparatorLowMemImpl();
+	ContentsComparatorLowMemImplContext fallbackContext = new ContentsComparatorLowMemImplContext();
+	SuffixAutomaton automaton;
+	Overlap fallbackOverlap = new Overlap();
+	IntRange fallbackRangeA = new IntRange();
+	IntRange fallbackRangeB = new IntRange();
+	
+	//explicit stack of fallback search - frames of kind, beginA, endA, beginB, endB
+	int[] fallbackStack = new int[5*16];
+	
+	//indexes are used only before recursion descends, so they are shared by all levels
+	PositionIndex indexA = new PositionIndex();
+	PositionIndex indexB = new PositionIndex();
+	
+	@Override
+	public void setEncoder(TokenEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
+	@Override
+	public void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		encoder.encodeReusing(a, b, ids);
+		
+		idsA = ids[0];
+		idsB = ids[1];
+		
+		this.a = a;
+		this.b = b;
+		
+		fallbackContext.initialize(a, rangeA, b, rangeB);
+		
+		clearRuns();
+		compareRange(rangeA.getBegin(), rangeA.getEnd(), rangeB.getBegin(), rangeB.getEnd());
+		
+		//contents are not needed anymore
+		this.a = null;
+		this.b = null;
+	}
+	
+	/**
+	 * Find common runs of given area and add them in order.
+	 */
+	private void compareRange(int beginA, int endA, int beginB, int endB) {
+		//same beginning
+		int prefix = 0;
+		
+		while (beginA+prefix<endA && beginB+prefix<endB && idsA[beginA+prefix]==idsB[beginB+prefix]) {
+			++prefix;
+		}
+		
+		addRun(beginA, beginB, prefix);
+		
+		beginA += prefix;
+		beginB += prefix;
+		
+		//same end
+		int suffix = 0;
+		
+		while (endA-suffix>beginA && endB-suffix>beginB && idsA[endA-suffix-1]==idsB[endB-suffix-1]) {
+			++suffix;
+		}
+		
+		endA -= suffix;
+		endB -= suffix;
+		
+		if (beginA<endA && beginB<endB) {
+			if ((long)(endA-beginA)*(endB-beginB)<=SMALL_GAP_CELLS || !compareByAnchors(beginA, endA, beginB, endB)) {
+				compareByFallback(beginA, endA, beginB, endB);
+			}
+		}
+		
+		addRun(endA, endB, suffix);
+	}
+	
+	/**
+	 * Align area by chain of anchors, gaps between them recursively.
+	 * @return false when there are no usable anchors
+	 */
+	private boolean compareByAnchors(int beginA, int endA, int beginB, int endB) {
+		indexA.build(idsA, beginA, endA);
+		indexB.build(idsB, beginB, endB);
+		
+		//lowest occurrence of token present on both sides
+		int limit = Integer.MAX_VALUE;
+		
+		for (int slot=0;slot<indexA.getSlotsCount();++slot) {
+			int token = idsA[indexA.getPositions()[indexA.getStart(slot)]];
+			int countB = indexB.count(token);
+			
+			if (countB>0) {
+				limit = Math.min(limit, Math.max(indexA.getEnd(slot)-indexA.getStart(slot), countB));
+			}
+		}
+		
+		//nothing in common
+		if (limit==Integer.MAX_VALUE) {
+			return true;
+		}
+		
+		if (limit>MAX_OCCURRENCES) {
+			return false;
+		}
+		
+		int chainEnd = findLongestChain(beginA, endA, indexA, indexB, limit);
+		
+		//chain is stored backwards by prev links - reverse it into tails
+		int chainLength = 0;
+		
+		for (int p=chainEnd;p>=0;p=pairsPrev[p]) {
+			tails[chainLength++] = p;
+		}
+		
+		//copy anchors out of shared buffers before recursion reuses them
+		int[] anchorsA = new int[chainLength];
+		int[] anchorsB = new int[chainLength];
+		
+		for (int i=0;i<chainLength;++i) {
+			int p = tails[chainLength-1-i];
+			
+			anchorsA[i] = pairsA[p];
+			anchorsB[i] = pairsB[p];
+		}
+		
+		int cursorA = beginA;
+		int cursorB = beginB;
+		
+		for (int i=0;i<chainLength;++i) {
+			compareRange(cursorA, anchorsA[i], cursorB, anchorsB[i]);
+			addRun(anchorsA[i], anchorsB[i], 1);
+			
+			cursorA = anchorsA[i]+1;
+			cursorB = anchorsB[i]+1;
+		}
+		
+		compareRange(cursorA, endA, cursorB, endB);
+		
+		return true;
+	}
+	
+	/**
+	 * Longest chain of pairs (i, j) of same anchor tokens increasing in both contents - patience sorting.
+	 * @return index of last pair of chain, previous ones are linked by pairsPrev
+	 */
+	private int findLongestChain(int beginA, int endA, PositionIndex indexA, PositionIndex indexB, int limit) {
+		int pairsCount = 0;
+		int tailsCount = 0;
+		
+		int[] positionsB = indexB.getPositions();
+		
+		for (int i=beginA;i<endA;++i) {
+			int token = idsA[i];
+			int slotB = indexB.find(token);
+			
+			if (slotB<0 || indexA.count(token)>limit || indexB.getEnd(slotB)-indexB.getStart(slotB)>limit) {
+				continue;
+			}
+			
+			//descending j, so one i is used at most once in chain
+			for (int k=indexB.getEnd(slotB)-1;k>=indexB.getStart(slotB);--k) {
+				int j = positionsB[k];
+				
+				ensurePairsCapacity(pairsCount+1);
+				
+				//first tail with j equal or greater
+				int low = 0;
+				int high = tailsCount;
+				
+				while (low<high) {
+					int mid = (low+high)>>>1;
+					
+					if (pairsB[tails[mid]]<j) {
+						low = mid+1;
+					} else {
+						high = mid;
+					}
+				}
+				
+				pairsA[pairsCount] = i;
+				pairsB[pairsCount] = j;
+				pairsPrev[pairsCount] = low>0 ? tails[low-1] : -1;
+				
+				tails[low] = pairsCount;
+				
+				if (low==tailsCount) {
+					++tailsCount;
+				}
+				
+				++pairsCount;
+			}
+		}
+		
+		return tails[tailsCount-1];
+	}
+	
+	/**
+	 * Align area by repeated longest substring search - LowMemImpl for small areas, suffix automaton for big ones.
+	 * Recursion is simulated by explicit stack, runs are added in order.
+	 */
+	private void compareByFallback(int beginA, int endA, int beginB, int endB) {
+		int top = pushFallback(0, FALLBACK_AREA, beginA, endA, beginB, endB);
+		
+		while (top>0) {
+			top -= 5;
+			
+			int kind = fallbackStack[top];
+			int areaBeginA = fallbackStack[top+1];
+			int areaEndA = fallbackStack[top+2];
+			int areaBeginB = fallbackStack[top+3];
+			int areaEndB = fallbackStack[top+4];
+			
+			if (kind==FALLBACK_RUN) {
+				addRun(areaBeginA, areaBeginB, areaEndA-areaBeginA);
+				continue;
+			}
+			
+			if (areaBeginA>=areaEndA || areaBeginB>=areaEndB) {
+				continue;
+			}
+			
+			fallbackRangeA.initialize(areaBeginA, areaEndA);
+			fallbackRangeB.initialize(areaBeginB, areaEndB);
+			fallbackOverlap.clean();
+			
+			if ((long)fallbackRangeA.length()*fallbackRangeB.length()<=SMALL_GAP_CELLS) {
+				fallback.findBiggestOverlap(a, fallbackRangeA, b, fallbackRangeB, fallbackOverlap, fallbackContext);
+			} else {
+				if (automaton==null) {
+					automaton = new SuffixAutomaton();
+				}
+				
+				automaton.build(idsB, areaBeginB, areaEndB);
+				automaton.findLongestCommon(idsA, areaBeginA, areaEndA, fallbackOverlap);
+			}
+			
+			if (fallbackOverlap.getA().isEmpty()) {
+				continue;
+			}
+			
+			int overlapBeginA = fallbackOverlap.getA().getBegin();
+			int overlapBeginB = fallbackOverlap.getB().getBegin();
+			int length = fallbackOverlap.getA().length();
+			
+			//reverse order - part before overlap is processed first
+			top = pushFallback(top, FALLBACK_AREA, overlapBeginA+length, areaEndA, overlapBeginB+length, areaEndB);
+			top = pushFallback(top, FALLBACK_RUN, overlapBeginA, overlapBeginA+length, overlapBeginB, overlapBeginB+length);
+			top = pushFallback(top, FALLBACK_AREA, areaBeginA, overlapBeginA, areaBeginB, overlapBeginB);
+		}
+	}
+	
+	private int pushFallback(int top, int kind, int beginA, int endA, int beginB, int endB) {
+		if (fallbackStack.length<top+5) {
+			fallbackStack = Arrays.copyOf(fallbackStack, fallbackStack.length*2);
+		}
+		
+		fallbackStack[top] = kind;
+		fallbackStack[top+1] = beginA;
+		fallbackStack[top+2] = endA;
+		fallbackStack[top+3] = beginB;
+		fallbackStack[top+4] = endB;
+		
+		return top+5;
+	}
+	
+	private void ensurePairsCapacity(int capacity) {
+		if (pairsA.length<capacity) {
+			int size = Math.max(capacity, pairsA.length*2);
+			
+			pairsA = Arrays.copyOf(pairsA, size);
+			pairsB = Arrays.copyOf(pairsB, size);
+			pairsPrev = Arrays.copyOf(pairsPrev, size);
+			tails = Arrays.copyOf(tails, size);
+		}
+	}
+}
@@ -15,6 +15,10 @@
 
 package cz.nalezen.diffator.impl;
 
+import java.util.concurrent.ForkJoinPool;
+
+import cz.nalezen.diffator.ComparisonBudget;
+import cz.nalezen.diffator.ComparisonResult;
 import cz.nalezen.diffator.Content;
 import cz.nalezen.diffator.DiffEventsHandler;
 import cz.nalezen.diffator.DiffEventsHandler.EventSide;
@@ -24,12 +28,28 @@ import cz.nalezen.diffator.utils.Overlap;
 
 /**
  * Basic implementation containing basic recursive algorithm - subimplementations just add longest substring search.
+ * Recursion is implemented iteratively by explicit stack, so its depth is not limited by thread stack size.
  * @author Jaroslav Kubos
  *
  * @param <T> Type for comparison calculation data
  */
 public abstract class ContentsComparatorImpl<T extends ContentsComparatorContext> {
 
+	/**
+	 * Parts having less cells (M*N) are compared sequentially by parallel comparison.
+	 */
+	public static final long DEFAULT_PARALLEL_THRESHOLD = 1<<16;
+	
+	/**
+	 * Result of compareIntervals() when comparison was aborted because expected result can't be reached.
+	 */
+	private static final double ABORTED = -1;
+	
+	/**
+	 * Tolerance of running upper bound - it is summed in different order than result.
+	 */
+	private static final double BOUND_TOLERANCE = 1e-9;
+
 	/**
 	 * 
 	 * @param a left content
@@ -39,23 +59,173 @@ public abstract class ContentsComparatorImpl<T extends ContentsComparatorContext
 	 * @return
 	 */
 	public double compare(Content a, Content b,DiffEventsHandler consumer,  int minBlockSize) {
-		Overlap overlap = new Overlap();
+		return compare(a, b, consumer, minBlockSize, createSession());
+	}
+	
+	/**
+	 * Create session for repeated comparisons - it keeps context and helper objects, so they are not allocated again.
+	 * @return
+	 */
+	public ComparatorSession<T> createSession() {
+		return new ComparatorSession<>(this);
+	}
+	
+	/**
+	 * Same as compare() but independent parts of contents are compared by multiple threads of pool. Events are delivered
+	 * to consumer in the same order as by compare() - after all parts are done.
+	 * @param pool pool running comparison
+	 */
+	public double compareParallel(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ForkJoinPool pool) {
+		return compareParallel(a, b, consumer, minBlockSize, pool, DEFAULT_PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * Same as compare() but independent parts of contents are compared by multiple threads of pool. Events are delivered
+	 * to consumer in the same order as by compare() - after all parts are done.
+	 * @param pool pool running comparison
+	 * @param threshold parts having less cells (M*N) are compared sequentially
+	 */
+	public double compareParallel(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ForkJoinPool pool, long threshold) {
+		return compare(a, b, consumer, minBlockSize, createSession(), pool, threshold, 0, null);
+	}
+	
+	/**
+	 * Same as compare() but comparison is aborted as soon as it is obvious that result can't reach minExpectation.
+	 * Upper bound of result is kept during comparison - each part waiting for processing may contribute at most its
+	 * weight (similarity is never above 1.0). Aborted comparison returns 0, consumer gets onDone(0) after
+	 * events delivered so far.
+	 * @param minExpectation minimal expected similarity
+	 */
+	public double compareWithExpectation(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, double minExpectation) {
+		return compareWithExpectation(a, b, consumer, minBlockSize, minExpectation, createSession());
+	}
+	
+	/**
+	 * Same as compare() but work is limited by budget. When it is exhausted, parts not searched yet are reported as different
+	 * and result is marked as lower bound of similarity. Initialization of context (see ContentsComparatorContext) is skipped when
+	 * budget can't afford search of the whole area, so the rest is different then.
+	 * @param budget limit of cells and time
+	 */
+	public ComparisonResult compareWithBudget(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ComparisonBudget budget) {
+		return compareWithBudget(a, b, consumer, minBlockSize, budget, createSession());
+	}
+	
+	/**
+	 * Compare using data of session.
+	 */
+	double compare(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ComparatorSession<T> session) {
+		return compare(a, b, consumer, minBlockSize, session, null, 0, 0, null);
+	}
+	
+	/**
+	 * Compare with expectation using data of session.
+	 */
+	double compareWithExpectation(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, double minExpectation, ComparatorSession<T> session) {
+		return compare(a, b, consumer, minBlockSize, session, null, 0, minExpectation, null);
+	}
+	
+	/**
+	 * Compare with budget using data of session.
+	 */
+	ComparisonResult compareWithBudget(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ComparisonBudget budget, ComparatorSession<T> session) {
+		BudgetTracker tracker = new BudgetTracker(budget);
+		double res = compare(a, b, consumer, minBlockSize, session, null, 0, 0, tracker);
+		
+		return new ComparisonResult(res, tracker.isExhausted());
+	}
+	
+	/**
+	 * Compare using data of session, in parallel when pool is given, with abort when minExpectation is positive,
+	 * limited when budget is given.
+	 */
+	private double compare(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ComparatorSession<T> session, 
+			ForkJoinPool pool, long threshold, double minExpectation, BudgetTracker budget) {
+		try {
+			return compareTrimmed(a, b, consumer, minBlockSize, session, pool, threshold, minExpectation, budget);
+		} finally {
+			//session must not hold compared contents
+			session.encoder.release();
+		}
+	}
+	
+	/**
+	 * Strip common ends and compare the rest.
+	 */
+	private double compareTrimmed(Content a, Content b, DiffEventsHandler consumer, int minBlockSize, ComparatorSession<T> session, 
+			ForkJoinPool pool, long threshold, double minExpectation, BudgetTracker budget) {
+		Overlap overlap = session.overlap;
 
 		//it starts over whole range
-		IntRange helpA = new IntRange(a.getRange());
-		IntRange helpB = new IntRange(b.getRange());
+		IntRange helpA = session.rangeA;
+		IntRange helpB = session.rangeB;
+		
+		helpA.initialize(0, a.length());
+		helpB.initialize(0, b.length());
 		
-		//create and initialize
-        T context = createContext();
-        context.initialize(a, b);
+		//strip same beginning and end - ranges are shrunk to the rest
+		CommonEndsTrimmer trimmer = session.trimmer;
+		trimmer.trim(a, helpA, b, helpB, minBlockSize, overlap);
+		
+		//initialize just for the rest - unless budget can't afford even the first search
+        T context = session.context;
+        
+        if (budget==null || budget.canAfford((long)helpA.length()*helpB.length())) {
+        	context.initialize(a, helpA, b, helpB);
+        }
 
         //report begin
         if (consumer!=null) {
         	consumer.onBeforeStart();
         }
         
+        //common beginning is reported first...
+        IntRange commonA = session.commonA;
+        IntRange commonB = session.commonB;
+        
+        if (trimmer.getPrefix(commonA, commonB)) {
+        	report(consumer, a, commonA, b, commonB, EventType.COMMON_PART);
+        }
+        
+        //stripped parts are folded linearly - so expectation is converted to minimal result of the rest
+        double minResult = 0;
+        
+        if (minExpectation>0) {
+        	double base = trimmer.foldSimilarity(0);
+        	double scale = trimmer.foldSimilarity(1)-base;
+        	
+        	if (scale>0) {
+        		minResult = (minExpectation-base)/scale;
+        	}
+        }
+        
         //start recursion
-		double res = compareIntervalsRecursively(a, helpA, b, helpB, minBlockSize, consumer, overlap, context);
+		double res;
+		
+		if (pool==null) {
+			res = compareIntervals(a, helpA, b, helpB, minBlockSize, consumer, overlap, context, session.stack, minResult, budget);
+			
+			if (res==ABORTED) {
+				if (consumer!=null) {
+		        	consumer.onDone(0);
+		        }
+				
+				return 0;
+			}
+		} else {
+			ParallelIntervalsTask<T> task = new ParallelIntervalsTask<>(this, context, a, helpA, b, helpB, minBlockSize, threshold, consumer!=null);
+			res = pool.invoke(task);
+			
+			if (consumer!=null) {
+				task.replay(consumer);
+			}
+		}
+		
+		//...and common end last
+		if (trimmer.getSuffix(commonA, commonB)) {
+        	report(consumer, a, commonA, b, commonB, EventType.COMMON_PART);
+        }
+		
+		res = trimmer.foldSimilarity(res);
 		
 		//report end
 		if (consumer!=null) {
@@ -71,6 +241,19 @@ public abstract class ContentsComparatorImpl<T extends ContentsComparatorContext
 	 */
 	protected abstract T createContext();
 	
+	/**
+	 * Context for worker thread of parallel comparison. Implementations not modifying context during findBiggestOverlap()
+	 * share the given one, others create and initialize their own.
+	 * @param context context initialized for whole compared area
+	 * @param a Left content
+	 * @param rangeA Area compared by worker in left content
+	 * @param b Right content
+	 * @param rangeB Area compared by worker in right content
+	 */
+	protected T createWorkerContext(T context, Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		return context;
+	}
+	
 	/**
 	 * Find longest substring in given parts of contents.
 	 * @param a Left content
@@ -85,27 +268,176 @@ public abstract class ContentsComparatorImpl<T extends ContentsComparatorContext
 	/**
 	 * Recursively divides content to: biggest shared part, part before it, part after it. 
 	 * On before&after parts runs itself recursively until minBlockSize is reached.
+	 * Recursion is simulated by explicit stack - frame is revisited after each of its parts is done.
 	 * @param a Left content
-	 * @param rangeA Search area in left content
+	 * @param rangeA Search area in left content, used as helper object later
 	 * @param b Right content
-	 * @param rangeB Search area in right content
+	 * @param rangeB Search area in right content, used as helper object later
 	 * @param minBlockSize When search area is smaller than this value then is considered different.
 	 * @param consumer Callback handler.
 	 * @param overlap Shared object - allocated once.
 	 * @param context Context object where algorithm may store calculation data.
+	 * @param stack Stack of intervals waiting for processing.
 	 * @return
 	 */
-	private double compareIntervalsRecursively(Content a, IntRange rangeA, Content b, IntRange rangeB, int minBlockSize, DiffEventsHandler consumer, 
+	double compareIntervals(Content a, IntRange rangeA, Content b, IntRange rangeB, int minBlockSize, DiffEventsHandler consumer, 
+			Overlap overlap, T context, IntervalsStack stack) {
+		
+		return compareIntervals(a, rangeA, b, rangeB, minBlockSize, consumer, overlap, context, stack, 0, null);
+	}
+	
+	/**
+	 * Same as compareIntervals() but aborted when result can't reach minResult and limited by budget.
+	 * @param minResult positive value turns on running upper bound of result
+	 * @param budget when given, areas are considered different once it is exhausted
+	 * @return result or ABORTED
+	 */
+	private double compareIntervals(Content a, IntRange rangeA, Content b, IntRange rangeB, int minBlockSize, DiffEventsHandler consumer, 
+			Overlap overlap, T context, IntervalsStack stack, double minResult, BudgetTracker budget) {
+		
+		boolean bounded = minResult>0;
+		int minSize = Math.max(1, minBlockSize);
+		
+		stack.clear();
+		int root = stack.push(rangeA.getBegin(), rangeA.getEnd(), rangeB.getBegin(), rangeB.getEnd());
+		stack.setDouble(root, IntervalsStack.WEIGHT, 1);
+		
+		//upper bound of result - what is known plus weights of parts waiting for search
+		double bound = potential(rangeA.getBegin(), rangeA.getEnd(), rangeB.getBegin(), rangeB.getEnd(), minSize);
+		
+		if (bounded && bound<minResult) {
+			return ABORTED;
+		}
+		
+		//result of last finished frame
+		double result = 0;
+		
+		while (!stack.isEmpty()) {
+			int frame = stack.top();
+			double weight = stack.getDouble(frame, IntervalsStack.WEIGHT);
+			
+			switch (stack.getInt(frame, IntervalsStack.PHASE)) {
+			case IntervalsStack.PHASE_SEARCH:
+				rangeA.initialize(stack.getInt(frame, IntervalsStack.A_BEGIN), stack.getInt(frame, IntervalsStack.A_END));
+				rangeB.initialize(stack.getInt(frame, IntervalsStack.B_BEGIN), stack.getInt(frame, IntervalsStack.B_END));
+				
+				boolean found;
+				
+				if (budget!=null && !rangeA.isEmpty() && !rangeB.isEmpty() && !budget.charge((long)rangeA.length()*rangeB.length())) {
+					report(consumer, a, rangeA, b, rangeB, EventType.DIFFERENT_PART);
+					found = false;
+				} else {
+					found = searchOverlap(a, rangeA, b, rangeB, minBlockSize, consumer, overlap, context);
+				}
+				
+				if (!found) {
+					if (bounded) {
+						bound -= weight*potential(rangeA.getBegin(), rangeA.getEnd(), rangeB.getBegin(), rangeB.getEnd(), minSize);
+						
+						if (bound<minResult-BOUND_TOLERANCE) {
+							return ABORTED;
+						}
+					}
+					
+					result = 0;
+					stack.pop();
+					break;
+				}
+				
+				//add smaller overlap ratio to sum
+				double sum = 0;
+				sum += overlap.getA().length()/(double)Math.max(rangeA.length(), rangeB.length());
+			
+				int h1aBegin = rangeA.getBegin();
+				int h1aEnd = overlap.getA().getBegin();
+				int h1bBegin = rangeB.getBegin();
+				int h1bEnd = overlap.getB().getBegin();
+				
+				int h2aBegin = overlap.getA().getEnd();
+				int h2aEnd = rangeA.getEnd();
+				int h2bBegin = overlap.getB().getEnd();
+				int h2bEnd = rangeB.getEnd();
+				
+				//which side takes bigger part of its whole content		
+				double beforeMaxPart = Math.max((h1aEnd-h1aBegin)/(double)rangeA.length(), (h1bEnd-h1bBegin)/(double)rangeB.length());		
+				double afterMaxPart = Math.max((h2aEnd-h2aBegin)/(double)rangeA.length(), (h2bEnd-h2bBegin)/(double)rangeB.length());
+				
+				stack.setInt(frame, IntervalsStack.OVERLAP_A, h1aEnd);
+				stack.setInt(frame, IntervalsStack.OVERLAP_B, h1bEnd);
+				stack.setInt(frame, IntervalsStack.OVERLAP_LENGTH, overlap.getA().length());
+				stack.setDouble(frame, IntervalsStack.SUM, sum);
+				stack.setDouble(frame, IntervalsStack.BEFORE_MAX_PART, beforeMaxPart);
+				stack.setDouble(frame, IntervalsStack.AFTER_MAX_PART, afterMaxPart);
+				stack.setInt(frame, IntervalsStack.PHASE, IntervalsStack.PHASE_BEFORE);
+				
+				//searched part is replaced by found overlap and parts around it
+				if (bounded) {
+					bound += weight*(sum-potential(rangeA.getBegin(), rangeA.getEnd(), rangeB.getBegin(), rangeB.getEnd(), minSize)
+							+beforeMaxPart*potential(h1aBegin, h1aEnd, h1bBegin, h1bEnd, minSize)
+							+afterMaxPart*potential(h2aBegin, h2aEnd, h2bBegin, h2bEnd, minSize));
+					
+					if (bound<minResult-BOUND_TOLERANCE) {
+						return ABORTED;
+					}
+				}
+				
+				//parts before current overlap
+				int before = stack.push(h1aBegin, h1aEnd, h1bBegin, h1bEnd);
+				stack.setDouble(before, IntervalsStack.WEIGHT, weight*beforeMaxPart);
+				break;
+				
+			case IntervalsStack.PHASE_BEFORE:
+				stack.setDouble(frame, IntervalsStack.SUM, stack.getDouble(frame, IntervalsStack.SUM)+stack.getDouble(frame, IntervalsStack.BEFORE_MAX_PART)*result);
+				
+				int overlapA = stack.getInt(frame, IntervalsStack.OVERLAP_A);
+				int overlapB = stack.getInt(frame, IntervalsStack.OVERLAP_B);
+				int overlapLength = stack.getInt(frame, IntervalsStack.OVERLAP_LENGTH);
+				
+				//report to callback - common part
+				if (consumer!=null) {
+					rangeA.initialize(overlapA, overlapA+overlapLength);
+					rangeB.initialize(overlapB, overlapB+overlapLength);
+					
+					report(consumer, a, rangeA, b, rangeB, EventType.COMMON_PART);
+				}
+				
+				stack.setInt(frame, IntervalsStack.PHASE, IntervalsStack.PHASE_AFTER);
+				
+				//parts after current overlap
+				int after = stack.push(overlapA+overlapLength, stack.getInt(frame, IntervalsStack.A_END), overlapB+overlapLength, stack.getInt(frame, IntervalsStack.B_END));
+				stack.setDouble(after, IntervalsStack.WEIGHT, weight*stack.getDouble(frame, IntervalsStack.AFTER_MAX_PART));
+				break;
+				
+			default:
+				result = stack.getDouble(frame, IntervalsStack.SUM)+stack.getDouble(frame, IntervalsStack.AFTER_MAX_PART)*result;
+				stack.pop();
+				break;
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Highest possible similarity of area - 0 when no block big enough fits, otherwise 1.
+	 */
+	private static double potential(int aBegin, int aEnd, int bBegin, int bEnd, int minSize) {
+		return Math.min(aEnd-aBegin, bEnd-bBegin)>=minSize ? 1 : 0;
+	}
+	
+	/**
+	 * Search for longest substring in given area.
+	 * @return false when area is considered different - it is already reported to callback
+	 */
+	boolean searchOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, int minBlockSize, DiffEventsHandler consumer, 
 			Overlap overlap, T context) {
 		
 		//empty range - quit
 		if (rangeA.isEmpty() || rangeB.isEmpty()) {
 			//report to callback
 			report(consumer, a, rangeA, b, rangeB, EventType.DIFFERENT_PART);
-			return 0;
+			return false;
 		}
-
-		double sum = 0;
 	
 		//search for longest substring - by algorithm delivered by derived class
 		overlap.clean();
@@ -117,7 +449,7 @@ public abstract class ContentsComparatorImpl<T extends ContentsComparatorContext
 			//report to callback
 			report(consumer, a, rangeA, b, rangeB, EventType.DIFFERENT_PART);
 			
-			return 0;
+			return false;
 		}
 		
 		//overlap ranges must have same length
@@ -131,50 +463,10 @@ public abstract class ContentsComparatorImpl<T extends ContentsComparatorContext
 			//report to callback
 			report(consumer, a, rangeA, b, rangeB, EventType.DIFFERENT_PART);
 			
-			return 0;
-		}
-		
-		//add smaller overlap ratio to sum
-		sum += overlap.getA().length()/(double)Math.max(rangeA.length(), rangeB.length());
-	
-		//store parameters on stack - avoid memory allocation on heap
-		int h1aBegin = rangeA.getBegin();
-		int h1aEnd = overlap.getA().getBegin();
-		int h1bBegin = rangeB.getBegin();
-		int h1bEnd = overlap.getB().getBegin();
-		
-		int h2aBegin = overlap.getA().getEnd();
-		int h2aEnd = rangeA.getEnd();
-		int h2bBegin = overlap.getB().getEnd();
-		int h2bEnd = rangeB.getEnd();
-		
-		//which side takes bigger part of its whole content		
-		double beforeMaxPart = Math.max((h1aEnd-h1aBegin)/(double)rangeA.length(), (h1bEnd-h1bBegin)/(double)rangeB.length());		
-		double afterMaxPart = Math.max((h2aEnd-h2aBegin)/(double)rangeA.length(), (h2bEnd-h2bBegin)/(double)rangeB.length());
-		
-		//define working area before common part
-		rangeA.initialize(h1aBegin, h1aEnd);
-		rangeB.initialize(h1bBegin, h1bEnd);
-
-		//parts before current overlap
-		sum += beforeMaxPart*compareIntervalsRecursively(a, rangeA, b, rangeB, minBlockSize, consumer, overlap, context);
-		
-		//report to callback - common part
-		if (consumer!=null) {
-			rangeA.initialize(h1aEnd, h2aBegin);
-			rangeB.initialize(h1bEnd, h2bBegin);
-			
-			report(consumer, a, rangeA, b, rangeB, EventType.COMMON_PART);
+			return false;
 		}
 		
-		//define working area after common part
-		rangeA.initialize(h2aBegin, h2aEnd);
-		rangeB.initialize(h2bBegin, h2bEnd);
-		
-		//parts after current overlap
-		sum += afterMaxPart*compareIntervalsRecursively(a, rangeA, b, rangeB, minBlockSize, consumer, overlap, context);
-		
-		return sum;
+		return true;
 	}
 
 	private void report(DiffEventsHandler consumer, Content a, IntRange rangeA, Content b, IntRange rangeB, EventType type) {
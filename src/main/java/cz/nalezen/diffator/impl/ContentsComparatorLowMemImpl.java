@@ -15,46 +15,117 @@
 
 package cz.nalezen.diffator.impl;
 
+import java.util.concurrent.ForkJoinPool;
+
 import cz.nalezen.diffator.Content;
 import cz.nalezen.diffator.utils.IntRange;
 import cz.nalezen.diffator.utils.Overlap;
 
 /**
- * Implementation using 2*N memory
+ * Implementation using 2*N memory. With ForkJoinPool big areas are searched in parallel by wavefronts of tiles
+ * (see LowMemWavefront) - result is the same as sequential one.
  * @author Jaroslav Kubos
  *
  */
 public class ContentsComparatorLowMemImpl extends ContentsComparatorImpl<ContentsComparatorLowMemImplContext> {
 
+	/**
+	 * Areas having less cells (M*N) are searched sequentially.
+	 */
+	public static final long DEFAULT_PARALLEL_THRESHOLD = 1<<20;
+	
+	private ForkJoinPool pool;
+	private long parallelThreshold;
+	
+	/**
+	 * Sequential implementation.
+	 */
+	public ContentsComparatorLowMemImpl() {
+	}
+	
+	/**
+	 * Parallel implementation using default threshold.
+	 * @param pool pool running parallel search
+	 */
+	public ContentsComparatorLowMemImpl(ForkJoinPool pool) {
+		this(pool, DEFAULT_PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * Parallel implementation.
+	 * @param pool pool running parallel search
+	 * @param parallelThreshold areas having less cells (M*N) are searched sequentially
+	 */
+	public ContentsComparatorLowMemImpl(ForkJoinPool pool, long parallelThreshold) {
+		this.pool = pool;
+		this.parallelThreshold = parallelThreshold;
+	}
+	
 	@Override
 	protected ContentsComparatorLowMemImplContext createContext() {
-		return new ContentsComparatorLowMemImplContext();
+		return new ContentsComparatorLowMemImplContext(pool!=null);
+	}
+	
+	/**
+	 * Buffers are owned by worker, token IDs are shared.
+	 */
+	@Override
+	protected ContentsComparatorLowMemImplContext createWorkerContext(ContentsComparatorLowMemImplContext context, Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		ContentsComparatorLowMemImplContext res = new ContentsComparatorLowMemImplContext(false);
+		res.initialize(a, rangeA, b, rangeB);
+		
+		if (context.parallel) {
+			res.initializeParallel(context.ids, rangeA, rangeB);
+		}
+		
+		return res;
 	}
 
 	/**
-	 * Calculate substring on interesting area again and again.
+	 * Calculate substring on interesting area again and again. When both contents share token IDs these are compared instead of items.
 	 */
 	@Override
 	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorLowMemImplContext context) {
+		if (context.parallel && (long)rangeA.length()*rangeB.length()>=parallelThreshold) {
+			LowMemWavefront wavefront = new LowMemWavefront(context, rangeA, rangeB);
+			pool.invoke(wavefront);
+			wavefront.storeResult(res);
+			return;
+		}
+		
 	    int cost = 0;
 	    int maxLen = 0;
+	    
+	    int[] idsA = null;
+	    int[] idsB = null;
+	    
+	    if (a.sharesTokenIds(b)) {
+	    	idsA = a.getTokenIds();
+	    	idsB = b.getTokenIds();
+	    }
 
 		for (int i = 0; i < rangeA.length(); ++i) {
+			int indA = rangeA.getBegin()+i;
+			
+			int[] active = context.getActiveBuffer();
+			int[] inactive = context.getInactiveBuffer();
+			
 			for (int j = 0; j < rangeB.length(); ++j) {
-				int indA = rangeA.getBegin()+i;
 				int indB = rangeB.getBegin()+j;
+				
+				boolean same = idsA!=null ? idsA[indA]==idsB[indB] : a.getItem(indA).equals(b.getItem(indB));
 
-				if (!a.getItem(indA).equals(b.getItem(indB))) {
+				if (!same) {
 					cost = 0;
 				} else {					
 					if ((i == 0) || (j == 0)) {
 						cost = 1;
 					} else {
-						cost = context.getActiveBuffer()[j - 1] + 1;
+						cost = active[j - 1] + 1;
 					}
 				}
 				
-				context.getInactiveBuffer()[j] = cost;
+				inactive[j] = cost;
 				
 				if (cost > maxLen) {
 					maxLen = cost;
@@ -15,22 +15,103 @@
 
 package cz.nalezen.diffator.impl;
 
+import java.util.Arrays;
+
 import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.TokenEncoder;
 
 /**
- * Data for LowMem impl.
+ * Data for LowMem impl. In parallel mode also token IDs and borders of tiles (see LowMemWavefront).
  * @author Jaroslav Kubos
  *
  */
-public class ContentsComparatorLowMemImplContext implements ContentsComparatorContext {
+public class ContentsComparatorLowMemImplContext implements ContentsComparatorContext, TokenEncodingContext {
 
 	int[][] buffer;
 	
 	int activeBufferIndex;
 	
+	boolean parallel;
+	
+	//parallel mode only
+	int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	int[] rowBoundary = new int[0];
+	int[] colBoundary = new int[0];
+	int[] corners = new int[0];
+	int[] bandLength = new int[0];
+	int[] bandEndA = new int[0];
+	int[] bandEndB = new int[0];
+	
+	public ContentsComparatorLowMemImplContext() {
+		this(false);
+	}
+	
+	/**
+	 * @param parallel prepare data for parallel search
+	 */
+	public ContentsComparatorLowMemImplContext(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	@Override
+	public void setEncoder(TokenEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
 	@Override
-	public void initialize(Content a, Content b) {
-		buffer = new int[2][b.length()];
+	public void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		//buffers are reused by next initialization when big enough
+		if (buffer==null || buffer[0].length<rangeB.length()) {
+			buffer = new int[2][rangeB.length()];
+		}
+		
+		if (parallel) {
+			initializeParallel(encoder.encodeReusing(a, b, ids), rangeA, rangeB);
+		}
+	}
+	
+	/**
+	 * Turn on parallel mode using already encoded token IDs.
+	 */
+	void initializeParallel(int[][] ids, IntRange rangeA, IntRange rangeB) {
+		parallel = true;
+		
+		this.ids[0] = ids[0];
+		this.ids[1] = ids[1];
+		
+		if (rowBoundary.length<rangeA.length()) {
+			rowBoundary = new int[rangeA.length()];
+		}
+		
+		if (colBoundary.length<rangeB.length()) {
+			colBoundary = new int[rangeB.length()];
+		}
+	}
+	
+	int[] getIdsA() {
+		return ids[0];
+	}
+	
+	int[] getIdsB() {
+		return ids[1];
+	}
+	
+	/**
+	 * Clean borders for parallel search of area m*n split into given count of bands.
+	 */
+	void prepareWavefront(int m, int n, int bands) {
+		if (corners.length<bands) {
+			corners = new int[bands];
+			bandLength = new int[bands];
+			bandEndA = new int[bands];
+			bandEndB = new int[bands];
+		}
+		
+		Arrays.fill(rowBoundary, 0, m, 0);
+		Arrays.fill(colBoundary, 0, n, 0);
+		Arrays.fill(bandLength, 0, bands, 0);
 	}
 	
 	public int[] getActiveBuffer() {
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Implementation using Myers O((M+N)*D) diff algorithm, D is number of differences. Contents are aligned once
+ * during initialization, the longest aligned run is then picked as overlap. Memory is linear. Best for big
+ * and very similar contents - similarity is reported in the same scale as by other implementations, though it may
+ * differ slightly because runs follow the shortest edit script rather than longest substrings.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorMyersImpl extends ContentsComparatorImpl<ContentsComparatorMyersImplContext> {
+
+	@Override
+	protected ContentsComparatorMyersImplContext createContext() {
+		return new ContentsComparatorMyersImplContext();
+	}
+
+	@Override
+	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorMyersImplContext context) {
+		context.findLongestRun(rangeA, rangeB, res);
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import java.util.Arrays;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Data for MyersImpl. Common runs are found by Myers O((M+N)*D) algorithm with linear space divide and conquer
+ * - "An O(ND) Difference Algorithm and Its Variations", E. Myers 1986. D is number of differences, so it is very 
+ * fast for similar contents.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorMyersImplContext extends ContentsComparatorAlignmentImplContext implements TokenEncodingContext {
+
+	int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	
+	int[] idsA;
+	int[] idsB;
+	
+	//forward and reverse furthest reaching paths, indexed by diagonal
+	int[] forward = new int[0];
+	int[] reverse = new int[0];
+	
+	@Override
+	public void setEncoder(TokenEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
+	@Override
+	public void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		encoder.encodeReusing(a, b, ids);
+		
+		idsA = ids[0];
+		idsB = ids[1];
+		
+		int size = rangeA.length()+rangeB.length()+2;
+		
+		if (forward.length<size) {
+			forward = new int[size];
+			reverse = new int[size];
+		}
+		
+		clearRuns();
+		compareRange(rangeA.getBegin(), rangeA.getEnd(), rangeB.getBegin(), rangeB.getEnd());
+	}
+	
+	/**
+	 * Find common runs of given area and add them in order.
+	 */
+	private void compareRange(int beginA, int endA, int beginB, int endB) {
+		//same beginning
+		int prefix = 0;
+		
+		while (beginA+prefix<endA && beginB+prefix<endB && idsA[beginA+prefix]==idsB[beginB+prefix]) {
+			++prefix;
+		}
+		
+		addRun(beginA, beginB, prefix);
+		
+		beginA += prefix;
+		beginB += prefix;
+		
+		//same end
+		int suffix = 0;
+		
+		while (endA-suffix>beginA && endB-suffix>beginB && idsA[endA-suffix-1]==idsB[endB-suffix-1]) {
+			++suffix;
+		}
+		
+		endA -= suffix;
+		endB -= suffix;
+		
+		//one side empty - only insertions or deletions remain
+		if (beginA<endA && beginB<endB) {
+			bisect(beginA, endA, beginB, endB);
+		}
+		
+		addRun(endA, endB, suffix);
+	}
+	
+	/**
+	 * Find middle of shortest edit path and compare both halves. When paths don't meet there is nothing common.
+	 */
+	private void bisect(int beginA, int endA, int beginB, int endB) {
+		int lengthA = endA-beginA;
+		int lengthB = endB-beginB;
+		
+		int maxD = (lengthA+lengthB+1)/2;
+		int offset = maxD;
+		int size = 2*maxD;
+		
+		Arrays.fill(forward, 0, size, -1);
+		Arrays.fill(reverse, 0, size, -1);
+		
+		forward[offset+1] = 0;
+		reverse[offset+1] = 0;
+		
+		int delta = lengthA-lengthB;
+		
+		//when delta is odd paths meet during forward step, otherwise during reverse one
+		boolean front = delta%2!=0;
+		
+		//trim diagonals leaving area
+		int k1start = 0;
+		int k1end = 0;
+		int k2start = 0;
+		int k2end = 0;
+		
+		for (int d=0;d<maxD;++d) {
+			
+			for (int k1=-d+k1start;k1<=d-k1end;k1+=2) {
+				int k1Offset = offset+k1;
+				int x1;
+				
+				if (k1==-d || (k1!=d && forward[k1Offset-1]<forward[k1Offset+1])) {
+					x1 = forward[k1Offset+1];
+				} else {
+					x1 = forward[k1Offset-1]+1;
+				}
+				
+				int y1 = x1-k1;
+				
+				while (x1<lengthA && y1<lengthB && idsA[beginA+x1]==idsB[beginB+y1]) {
+					++x1;
+					++y1;
+				}
+				
+				forward[k1Offset] = x1;
+				
+				if (x1>lengthA) {
+					k1end += 2;
+				} else if (y1>lengthB) {
+					k1start += 2;
+				} else if (front) {
+					int k2Offset = offset+delta-k1;
+					
+					if (k2Offset>=0 && k2Offset<size && reverse[k2Offset]!=-1) {
+						if (x1>=lengthA-reverse[k2Offset]) {
+							split(beginA, endA, beginB, endB, x1, y1);
+							return;
+						}
+					}
+				}
+			}
+			
+			for (int k2=-d+k2start;k2<=d-k2end;k2+=2) {
+				int k2Offset = offset+k2;
+				int x2;
+				
+				if (k2==-d || (k2!=d && reverse[k2Offset-1]<reverse[k2Offset+1])) {
+					x2 = reverse[k2Offset+1];
+				} else {
+					x2 = reverse[k2Offset-1]+1;
+				}
+				
+				int y2 = x2-k2;
+				
+				while (x2<lengthA && y2<lengthB && idsA[endA-x2-1]==idsB[endB-y2-1]) {
+					++x2;
+					++y2;
+				}
+				
+				reverse[k2Offset] = x2;
+				
+				if (x2>lengthA) {
+					k2end += 2;
+				} else if (y2>lengthB) {
+					k2start += 2;
+				} else if (!front) {
+					int k1Offset = offset+delta-k2;
+					
+					if (k1Offset>=0 && k1Offset<size && forward[k1Offset]!=-1) {
+						int x1 = forward[k1Offset];
+						int y1 = offset+x1-k1Offset;
+						
+						if (x1>=lengthA-x2) {
+							split(beginA, endA, beginB, endB, x1, y1);
+							return;
+						}
+					}
+				}
+			}
+		}
+		
+		//no common item
+	}
+	
+	private void split(int beginA, int endA, int beginB, int endB, int x, int y) {
+		compareRange(beginA, beginA+x, beginB, beginB+y);
+		compareRange(beginA+x, endA, beginB+y, endB);
+	}
+}
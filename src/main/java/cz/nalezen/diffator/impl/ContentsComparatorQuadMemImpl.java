@@ -20,30 +20,83 @@ import cz.nalezen.diffator.utils.IntRange;
 import cz.nalezen.diffator.utils.Overlap;
 
 /**
- * Implementation using M*N memory
+ * Implementation using M*N memory. Matrix cells may be narrowed (see CellWidth) to save memory.
  * @author Jaroslav Kubos
  *
  */
 public class ContentsComparatorQuadMemImpl extends ContentsComparatorImpl<ContentsComparatorQuadMemImplContext> {
 
+	/**
+	 * Size of one matrix cell. Narrow cells saturate and longer runs are recovered by walking the diagonal,
+	 * so result is always the same - only memory and speed differ.
+	 */
+	public enum CellWidth {
+		/**
+		 * 1 byte per cell, runs up to 255 are stored directly
+		 */
+		BYTE,
+		/**
+		 * 2 bytes per cell, runs up to 65535 are stored directly
+		 */
+		SHORT,
+		/**
+		 * 4 bytes per cell
+		 */
+		INT
+	}
+	
+	private CellWidth cellWidth;
+	
+	/**
+	 * Implementation using int cells.
+	 */
+	public ContentsComparatorQuadMemImpl() {
+		this(CellWidth.INT);
+	}
+	
+	/**
+	 * @param cellWidth size of one matrix cell
+	 */
+	public ContentsComparatorQuadMemImpl(CellWidth cellWidth) {
+		this.cellWidth = cellWidth;
+	}
+	
 	@Override
 	protected ContentsComparatorQuadMemImplContext createContext() {
-		return new ContentsComparatorQuadMemImplContext();
+		return new ContentsComparatorQuadMemImplContext(cellWidth);
 	}
 
 	@Override
 	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorQuadMemImplContext context) {	
 		int maxLen = 0;
+		
+		int stride = context.getStride();
+		int saturation = context.getSaturation();
+		int offsetB = context.getOffsetB();
 
 		for (int i = rangeA.getBegin()+1; i <= rangeA.getEnd(); i++) {
 			
 			int maxLenA = i-rangeA.getBegin();
+			int row = i-context.getOffsetA();
+			int rowStart = (row-1)*stride-offsetB-1;
 			
 	        for (int j = rangeB.getBegin()+1; j <= rangeB.getEnd(); j++) {
 	        	
 	        	int maxLenB = j-rangeB.getBegin();
+	        	int limit = Math.min(maxLenA, maxLenB);
+	        	
+	        	if (limit<=maxLen) {
+	        		continue;
+	        	}
+	        	
+	        	int cell = context.getCell(rowStart+j);
+	        	
+	        	//saturated cell - real length is longer
+	        	if (cell>=saturation && limit>saturation) {
+	        		cell = context.getRunLength(row, j-offsetB, limit);
+	        	}
                     
-                int adjLen = Math.min(Math.min(maxLenA, maxLenB),  context.getBuffer()[i][j]); 
+                int adjLen = Math.min(limit, cell); 
 	        	
                 if (adjLen > maxLen) {
                     maxLen = adjLen;
@@ -55,4 +108,4 @@ public class ContentsComparatorQuadMemImpl extends ContentsComparatorImpl<Conten
 	    }
 	}
 
-}
\ No newline at end of file
+}
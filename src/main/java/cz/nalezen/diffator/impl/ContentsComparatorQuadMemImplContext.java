@@ -16,39 +16,230 @@
 package cz.nalezen.diffator.impl;
 
 import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.impl.ContentsComparatorQuadMemImpl.CellWidth;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.TokenEncoder;
 
 /**
- * Data for QuadMem impl.
+ * Data for QuadMem impl. Matrix is stored row by row in single array of selected cell width. Narrow cells saturate
+ * at their maximum - true length of such run is recovered by jumps back along its diagonal (see getRunLength()).
  * @author Jaroslav Kubos
  *
  */
-public class ContentsComparatorQuadMemImplContext implements ContentsComparatorContext {
+public class ContentsComparatorQuadMemImplContext implements ContentsComparatorContext, TokenEncodingContext {
 
-	int[][] buffer;
+	private static final int BYTE_MAX = 0xff;
+	private static final int SHORT_MAX = 0xffff;
+	
+	final CellWidth cellWidth;
+	final int saturation;
+	
+	//only one of them is used - by cell width
+	byte[] bytes = new byte[0];
+	short[] shorts = new short[0];
+	int[] ints = new int[0];
+	
+	int offsetA;
+	int offsetB;
+	int stride;
+	
+	int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	
+	public ContentsComparatorQuadMemImplContext() {
+		this(CellWidth.INT);
+	}
+	
+	public ContentsComparatorQuadMemImplContext(CellWidth cellWidth) {
+		this.cellWidth = cellWidth;
+		
+		switch (cellWidth) {
+		case BYTE:
+			saturation = BYTE_MAX;
+			break;
+		case SHORT:
+			saturation = SHORT_MAX;
+			break;
+		default:
+			saturation = Integer.MAX_VALUE;
+			break;
+		}
+	}
+	
+	@Override
+	public void setEncoder(TokenEncoder encoder) {
+		this.encoder = encoder;
+	}
 	
 	@Override
-	public void initialize(Content a, Content b) {
-		buffer = new int[a.length()+1][b.length()+1];
-		calculateSubstringsLength(a, b);
+	public void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		offsetA = rangeA.getBegin();
+		offsetB = rangeB.getBegin();
+		stride = rangeB.length();
+		
+		long cells = (long)rangeA.length()*rangeB.length();
+		
+		if (cells>Integer.MAX_VALUE) {
+			throw new RuntimeException("Contents too big for M*N matrix: "+rangeA.length()+"x"+rangeB.length());
+		}
+		
+		//buffer is reused by next initialization when big enough - all used cells are overwritten
+		prepare((int)cells);
+		
+		encoder.encodeReusing(a, b, ids);
+		
+		switch (cellWidth) {
+		case BYTE:
+			calculateBytes(ids[0], rangeA, ids[1], rangeB);
+			break;
+		case SHORT:
+			calculateShorts(ids[0], rangeA, ids[1], rangeB);
+			break;
+		default:
+			calculateInts(ids[0], rangeA, ids[1], rangeB);
+			break;
+		}
+	}
+	
+	/**
+	 * Index of cell [i][j] (both 1-based relative to offsets) is (i-1)*stride+j-1. Cell belongs to the end
+	 * of common substring at offsetA+i, offsetB+j (exclusive).
+	 * @return
+	 */
+	int getStride() {
+		return stride;
+	}
+	
+	int getOffsetA() {
+		return offsetA;
+	}
+	
+	int getOffsetB() {
+		return offsetB;
 	}
 	
-	int[][] getBuffer() {
-		return buffer;
+	/**
+	 * Maximal value of cell - longer runs are stored as this value.
+	 * @return
+	 */
+	int getSaturation() {
+		return saturation;
 	}
 	
-	private void calculateSubstringsLength(Content a, Content b) {		
-		for (int i=1;i<=a.length();i++) {
-		    for (int j=1;j<=b.length();j++) {
-		        if (a.getItem(i-1).equals(b.getItem(j-1))) {
-		            if (i==1 || j==1) {
-		            	buffer[i][j] = 1;
-		            }
-		            else {
-		            	buffer[i][j] = buffer[i-1][j-1]+1;
-		            }
+	/**
+	 * Stored (possibly saturated) value of cell.
+	 * @param index
+	 * @return
+	 */
+	int getCell(int index) {
+		switch (cellWidth) {
+		case BYTE:
+			return bytes[index]&BYTE_MAX;
+		case SHORT:
+			return shorts[index]&SHORT_MAX;
+		default:
+			return ints[index];
+		}
+	}
+	
+	/**
+	 * True length of run ending in cell [i][j] - saturated cell continues in cell saturation-steps back on the diagonal.
+	 * @param i 1-based row relative to offsetA
+	 * @param j 1-based column relative to offsetB
+	 * @param limit length is not searched beyond this value
+	 * @return length, at most limit
+	 */
+	int getRunLength(int i, int j, int limit) {
+		int length = 0;
+		
+		while (i>=1 && j>=1 && length<limit) {
+			int cell = getCell((i-1)*stride+j-1);
+			length += cell;
+			
+			if (cell<saturation) {
+				break;
+			}
+			
+			i -= saturation;
+			j -= saturation;
+		}
+		
+		return Math.min(length, limit);
+	}
+	
+	private void prepare(int cells) {
+		switch (cellWidth) {
+		case BYTE:
+			if (bytes.length<cells) {
+				bytes = new byte[cells];
+			}
+			break;
+		case SHORT:
+			if (shorts.length<cells) {
+				shorts = new short[cells];
+			}
+			break;
+		default:
+			if (ints.length<cells) {
+				ints = new int[cells];
+			}
+			break;
+		}
+	}
+	
+	private void calculateBytes(int[] idsA, IntRange rangeA, int[] idsB, IntRange rangeB) {
+		int m = rangeA.length();
+		int n = rangeB.length();
+		
+		for (int i=0;i<m;i++) {
+			int idA = idsA[offsetA+i];
+			int row = i*n;
+			
+		    for (int j=0;j<n;j++) {
+		        if (idA==idsB[offsetB+j]) {
+		        	int prev = (i==0 || j==0) ? 0 : bytes[row-n+j-1]&BYTE_MAX;
+		        	bytes[row+j] = (byte)(prev<BYTE_MAX ? prev+1 : BYTE_MAX);
+		        } else {
+		        	bytes[row+j] = 0;
+		        }
+		    }
+		}
+	}
+	
+	private void calculateShorts(int[] idsA, IntRange rangeA, int[] idsB, IntRange rangeB) {
+		int m = rangeA.length();
+		int n = rangeB.length();
+		
+		for (int i=0;i<m;i++) {
+			int idA = idsA[offsetA+i];
+			int row = i*n;
+			
+		    for (int j=0;j<n;j++) {
+		        if (idA==idsB[offsetB+j]) {
+		        	int prev = (i==0 || j==0) ? 0 : shorts[row-n+j-1]&SHORT_MAX;
+		        	shorts[row+j] = (short)(prev<SHORT_MAX ? prev+1 : SHORT_MAX);
+		        } else {
+		        	shorts[row+j] = 0;
+		        }
+		    }
+		}
+	}
+	
+	private void calculateInts(int[] idsA, IntRange rangeA, int[] idsB, IntRange rangeB) {
+		int m = rangeA.length();
+		int n = rangeB.length();
+		
+		for (int i=0;i<m;i++) {
+			int idA = idsA[offsetA+i];
+			int row = i*n;
+			
+		    for (int j=0;j<n;j++) {
+		        if (idA==idsB[offsetB+j]) {
+		        	ints[row+j] = (i==0 || j==0) ? 1 : ints[row-n+j-1]+1;
+		        } else {
+		        	ints[row+j] = 0;
 		        }
 		    }
 		}
 	}
-
 }
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Implementation searching longest common substring by binary search of its length, each length is tested by
+ * Rabin-Karp rolling hashes of token windows (see RollingHashMatcher). Expected O((M+N) log min(M,N)) time
+ * and N memory per search. Suitable for mid-sized and big contents.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorRollingHashImpl extends ContentsComparatorImpl<ContentsComparatorRollingHashImplContext> {
+
+	@Override
+	protected ContentsComparatorRollingHashImplContext createContext() {
+		return new ContentsComparatorRollingHashImplContext();
+	}
+	
+	/**
+	 * Hash table is owned by worker, token IDs are shared.
+	 */
+	@Override
+	protected ContentsComparatorRollingHashImplContext createWorkerContext(ContentsComparatorRollingHashImplContext context, Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		ContentsComparatorRollingHashImplContext res = new ContentsComparatorRollingHashImplContext();
+		res.idsA = context.idsA;
+		res.idsB = context.idsB;
+		
+		return res;
+	}
+
+	@Override
+	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorRollingHashImplContext context) {
+		context.getMatcher().findLongestCommon(context.getIdsA(), rangeA.getBegin(), rangeA.getEnd(), context.getIdsB(), rangeB.getBegin(), rangeB.getEnd(), res);
+	}
+}
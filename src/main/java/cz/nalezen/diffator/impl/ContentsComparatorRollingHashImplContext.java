@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.RollingHashMatcher;
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Data for RollingHashImpl.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorRollingHashImplContext implements ContentsComparatorContext, TokenEncodingContext {
+
+	int[][] ids = new int[2][];
+	TokenEncoder encoder = new TokenEncoder();
+	
+	int[] idsA;
+	int[] idsB;
+	
+	RollingHashMatcher matcher = new RollingHashMatcher();
+	
+	@Override
+	public void setEncoder(TokenEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
+	@Override
+	public void initialize(Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		encoder.encodeReusing(a, b, ids);
+		
+		idsA = ids[0];
+		idsB = ids[1];
+	}
+	
+	public int[] getIdsA() {
+		return idsA;
+	}
+	
+	public int[] getIdsB() {
+		return idsB;
+	}
+	
+	public RollingHashMatcher getMatcher() {
+		return matcher;
+	}
+}
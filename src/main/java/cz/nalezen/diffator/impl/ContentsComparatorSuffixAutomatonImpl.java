@@ -0,0 +1,52 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Implementation using suffix automaton - linear time and memory per longest substring search. Automaton is built
+ * over searched part of right content, then searched part of left content is streamed through it. Suitable for big contents.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentsComparatorSuffixAutomatonImpl extends ContentsComparatorImpl<ContentsComparatorSuffixAutomatonImplContext> {
+
+	@Override
+	protected ContentsComparatorSuffixAutomatonImplContext createContext() {
+		return new ContentsComparatorSuffixAutomatonImplContext();
+	}
+	
+	/**
+	 * Automaton is owned by worker, token IDs are shared.
+	 */
+	@Override
+	protected ContentsComparatorSuffixAutomatonImplContext createWorkerContext(ContentsComparatorSuffixAutomatonImplContext context, Content a, IntRange rangeA, Content b, IntRange rangeB) {
+		ContentsComparatorSuffixAutomatonImplContext res = new ContentsComparatorSuffixAutomatonImplContext();
+		res.idsA = context.idsA;
+		res.idsB = context.idsB;
+		
+		return res;
+	}
+
+	@Override
+	protected void findBiggestOverlap(Content a, IntRange rangeA, Content b, IntRange rangeB, Overlap res, ContentsComparatorSuffixAutomatonImplContext context) {
+		context.getAutomaton().build(context.getIdsB(), rangeB.getBegin(), rangeB.getEnd());
+		context.getAutomaton().findLongestCommon(context.getIdsA(), rangeA.getBegin(), rangeA.getEnd(), res);
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import java.util.Arrays;
+
+/**
+ * Explicit stack of intervals for iterative comparison - replacement of recursion, so deep divisions can't overflow
+ * thread stack. Frames are stored in primitive arrays, which only grow, so no object is allocated per step.
+ * @author Jaroslav Kubos
+ *
+ */
+class IntervalsStack {
+
+	//int fields of frame
+	static final int A_BEGIN = 0;
+	static final int A_END = 1;
+	static final int B_BEGIN = 2;
+	static final int B_END = 3;
+	static final int OVERLAP_A = 4;
+	static final int OVERLAP_B = 5;
+	static final int OVERLAP_LENGTH = 6;
+	static final int PHASE = 7;
+	static final int INTS = 8;
+	
+	//double fields of frame
+	static final int SUM = 0;
+	static final int BEFORE_MAX_PART = 1;
+	static final int AFTER_MAX_PART = 2;
+	static final int WEIGHT = 3;
+	static final int DOUBLES = 4;
+	
+	/**
+	 * Frame waits for search of longest substring.
+	 */
+	static final int PHASE_SEARCH = 0;
+	
+	/**
+	 * Frame waits for result of part before overlap.
+	 */
+	static final int PHASE_BEFORE = 1;
+	
+	/**
+	 * Frame waits for result of part after overlap.
+	 */
+	static final int PHASE_AFTER = 2;
+	
+	int[] ints = new int[INTS*32];
+	double[] doubles = new double[DOUBLES*32];
+	int size;
+	
+	void clear() {
+		size = 0;
+	}
+	
+	boolean isEmpty() {
+		return size==0;
+	}
+	
+	/**
+	 * Push new frame in search phase.
+	 * @return index of frame
+	 */
+	int push(int aBegin, int aEnd, int bBegin, int bEnd) {
+		if ((size+1)*INTS>ints.length) {
+			ints = Arrays.copyOf(ints, ints.length*2);
+			doubles = Arrays.copyOf(doubles, doubles.length*2);
+		}
+		
+		int frame = size++;
+		int base = frame*INTS;
+		
+		ints[base+A_BEGIN] = aBegin;
+		ints[base+A_END] = aEnd;
+		ints[base+B_BEGIN] = bBegin;
+		ints[base+B_END] = bEnd;
+		ints[base+PHASE] = PHASE_SEARCH;
+		
+		return frame;
+	}
+	
+	void pop() {
+		--size;
+	}
+	
+	/**
+	 * Index of top frame.
+	 * @return
+	 */
+	int top() {
+		return size-1;
+	}
+	
+	int getInt(int frame, int field) {
+		return ints[frame*INTS+field];
+	}
+	
+	void setInt(int frame, int field, int value) {
+		ints[frame*INTS+field] = value;
+	}
+	
+	double getDouble(int frame, int field) {
+		return doubles[frame*DOUBLES+field];
+	}
+	
+	void setDouble(int frame, int field, double value) {
+		doubles[frame*DOUBLES+field] = value;
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Parallel longest common substring search of LowMemImpl. Matrix is split into square tiles which are computed
+ * by anti-diagonal wavefronts - all tiles of one wavefront depend only on previous wavefronts, so they run in parallel.
+ * Tiles exchange just their borders: last row of band above (colBoundary), last column of tile on the left (rowBoundary)
+ * and corner cell (corners, one per band), so memory stays O(M+N).
+ * Every band keeps its best run, bands are reduced at the end by the same rule as sequential search uses:
+ * longest, then ending first in A, then ending first in B.
+ * @author Jaroslav Kubos
+ *
+ */
+class LowMemWavefront extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Width and height of tile.
+	 */
+	static final int TILE_SIZE = 256;
+
+	private final ContentsComparatorLowMemImplContext context;
+	
+	private final int[] idsA;
+	private final int[] idsB;
+	private final int beginA;
+	private final int beginB;
+	private final int m;
+	private final int n;
+	private final int bands;
+	private final int columns;
+	
+	LowMemWavefront(ContentsComparatorLowMemImplContext context, IntRange rangeA, IntRange rangeB) {
+		this.context = context;
+		
+		idsA = context.getIdsA();
+		idsB = context.getIdsB();
+		beginA = rangeA.getBegin();
+		beginB = rangeB.getBegin();
+		m = rangeA.length();
+		n = rangeB.length();
+		bands = (m+TILE_SIZE-1)/TILE_SIZE;
+		columns = (n+TILE_SIZE-1)/TILE_SIZE;
+		
+		context.prepareWavefront(m, n, bands);
+	}
+	
+	@Override
+	protected void compute() {
+		List<Tile> tiles = new ArrayList<>();
+		
+		for (int d=0;d<bands+columns-1;++d) {
+			tiles.clear();
+			
+			for (int r=Math.max(0, d-columns+1);r<=Math.min(d, bands-1);++r) {
+				tiles.add(new Tile(r, d-r));
+			}
+			
+			if (tiles.size()==1) {
+				tiles.get(0).compute();
+			} else {
+				invokeAll(tiles);
+			}
+		}
+	}
+	
+	/**
+	 * Reduce best runs of bands to result - not modified when nothing found.
+	 */
+	void storeResult(Overlap res) {
+		int[] bandLength = context.bandLength;
+		int[] bandEndA = context.bandEndA;
+		int[] bandEndB = context.bandEndB;
+		
+		int maxLen = 0;
+		int endA = 0;
+		int endB = 0;
+		
+		//bands are ordered by rows - strictly longer run wins
+		for (int r=0;r<bands;++r) {
+			if (bandLength[r]>maxLen) {
+				maxLen = bandLength[r];
+				endA = bandEndA[r];
+				endB = bandEndB[r];
+			}
+		}
+		
+		if (maxLen>0) {
+			res.getA().initialize(beginA+endA-maxLen+1, beginA+endA+1);
+			res.getB().initialize(beginB+endB-maxLen+1, beginB+endB+1);
+		}
+	}
+	
+	private class Tile extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final int band;
+		private final int column;
+		
+		Tile(int band, int column) {
+			this.band = band;
+			this.column = column;
+		}
+
+		@Override
+		protected void compute() {
+			int[] rowBoundary = context.rowBoundary;
+			int[] colBoundary = context.colBoundary;
+			int[] corners = context.corners;
+			
+			int rowStart = band*TILE_SIZE;
+			int rowEnd = Math.min(m, rowStart+TILE_SIZE);
+			int colStart = column*TILE_SIZE;
+			int colEnd = Math.min(n, colStart+TILE_SIZE);
+			int w = colEnd-colStart;
+			
+			//index 0 is column on the left of tile
+			int[] prev = new int[w+1];
+			int[] cur = new int[w+1];
+			
+			prev[0] = column==0 ? 0 : corners[band];
+			System.arraycopy(colBoundary, colStart, prev, 1, w);
+			
+			//corner of next tile in band is overwritten by this one
+			corners[band] = colBoundary[colEnd-1];
+			
+			int maxLen = 0;
+			int endA = 0;
+			int endB = 0;
+			
+			for (int i=rowStart;i<rowEnd;++i) {
+				int idA = idsA[beginA+i];
+				int offsetB = beginB+colStart-1;
+				
+				cur[0] = rowBoundary[i];
+				
+				for (int j=1;j<=w;++j) {
+					int cost = idA==idsB[offsetB+j] ? prev[j-1]+1 : 0;
+					cur[j] = cost;
+					
+					if (cost>maxLen) {
+						maxLen = cost;
+						endA = i;
+						endB = colStart+j-1;
+					}
+				}
+				
+				rowBoundary[i] = cur[w];
+				
+				int[] swap = prev;
+				prev = cur;
+				cur = swap;
+			}
+			
+			System.arraycopy(prev, 1, colBoundary, colStart, w);
+			
+			//tiles of one band never run concurrently
+			if (maxLen>context.bandLength[band] || (maxLen==context.bandLength[band] && maxLen>0 
+					&& (endA<context.bandEndA[band] || (endA==context.bandEndA[band] && endB<context.bandEndB[band])))) {
+				
+				context.bandLength[band] = maxLen;
+				context.bandEndA[band] = endA;
+				context.bandEndB[band] = endB;
+			}
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.DiffEventsHandler;
+import cz.nalezen.diffator.DiffEventsHandler.EventSide;
+import cz.nalezen.diffator.DiffEventsHandler.EventType;
+import cz.nalezen.diffator.tools.DiffEventsRecorder;
+import cz.nalezen.diffator.utils.IntRange;
+import cz.nalezen.diffator.utils.Overlap;
+
+/**
+ * Parallel variant of ContentsComparatorImpl.compareIntervals(). When both parts around found overlap are big,
+ * they are forked as independent tasks. When only one is big, the small one is compared sequentially and task
+ * continues with the big one - so tasks nest only when work really splits. Areas smaller than threshold are compared
+ * sequentially. Events are recorded and replayed in original order afterwards, similarity is summed in the same
+ * order as sequential comparison does, so result is exactly the same.
+ * @author Jaroslav Kubos
+ *
+ * @param <T> Type for comparison calculation data
+ */
+class ParallelIntervalsTask<T extends ContentsComparatorContext> extends RecursiveTask<Double> {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final ContentsComparatorImpl<T> impl;
+	private final T context;
+	private final Content a;
+	private final Content b;
+	private final int minBlockSize;
+	private final long threshold;
+	private final boolean record;
+	
+	private final IntRange rangeA;
+	private final IntRange rangeB;
+	
+	/**
+	 * Recorded events in order - null when not recording.
+	 */
+	private List<DiffEventsRecorder> events;
+	
+	//chain of frames continuing by one part - value of frame is (x + mult*value of part) + y
+	private double[] chainX = new double[8];
+	private double[] chainMult = new double[8];
+	private double[] chainY = new double[8];
+	private int chainCount;
+	
+	/**
+	 * @param impl implementation searching overlaps
+	 * @param context context initialized for whole compared area, it is used by workers when it is read-only
+	 * @param record whether events are recorded
+	 */
+	ParallelIntervalsTask(ContentsComparatorImpl<T> impl, T context, Content a, IntRange rangeA, Content b, IntRange rangeB, 
+			int minBlockSize, long threshold, boolean record) {
+		this.impl = impl;
+		this.context = context;
+		this.a = a;
+		this.b = b;
+		this.minBlockSize = minBlockSize;
+		this.threshold = threshold;
+		this.record = record;
+		this.rangeA = new IntRange(rangeA);
+		this.rangeB = new IntRange(rangeB);
+	}
+	
+	@Override
+	protected Double compute() {
+		T worker = impl.createWorkerContext(context, a, rangeA, b, rangeB);
+		Overlap overlap = new Overlap();
+		
+		DiffEventsRecorder head = record ? new DiffEventsRecorder() : null;
+		List<DiffEventsRecorder> tail = record ? new ArrayList<DiffEventsRecorder>() : null;
+		List<DiffEventsRecorder> forked = record ? new ArrayList<DiffEventsRecorder>() : null;
+		
+		double value;
+		
+		while (true) {
+			//small area - sequentially
+			if ((long)rangeA.length()*rangeB.length()<threshold) {
+				value = impl.compareIntervals(a, rangeA, b, rangeB, minBlockSize, head, overlap, worker, new IntervalsStack());
+				break;
+			}
+			
+			if (!impl.searchOverlap(a, rangeA, b, rangeB, minBlockSize, head, overlap, worker)) {
+				value = 0;
+				break;
+			}
+			
+			int length = overlap.getA().length();
+			double sum = length/(double)Math.max(rangeA.length(), rangeB.length());
+			
+			int h1aBegin = rangeA.getBegin();
+			int h1aEnd = overlap.getA().getBegin();
+			int h1bBegin = rangeB.getBegin();
+			int h1bEnd = overlap.getB().getBegin();
+			
+			int h2aBegin = overlap.getA().getEnd();
+			int h2aEnd = rangeA.getEnd();
+			int h2bBegin = overlap.getB().getEnd();
+			int h2bEnd = rangeB.getEnd();
+			
+			double beforeMaxPart = Math.max((h1aEnd-h1aBegin)/(double)rangeA.length(), (h1bEnd-h1bBegin)/(double)rangeB.length());		
+			double afterMaxPart = Math.max((h2aEnd-h2aBegin)/(double)rangeA.length(), (h2bEnd-h2bBegin)/(double)rangeB.length());
+			
+			boolean bigBefore = (long)(h1aEnd-h1aBegin)*(h1bEnd-h1bBegin)>=threshold;
+			boolean bigAfter = (long)(h2aEnd-h2aBegin)*(h2bEnd-h2bBegin)>=threshold;
+			
+			IntRange beforeA = new IntRange(h1aBegin, h1aEnd);
+			IntRange beforeB = new IntRange(h1bBegin, h1bEnd);
+			IntRange afterA = new IntRange(h2aBegin, h2aEnd);
+			IntRange afterB = new IntRange(h2bBegin, h2bEnd);
+			
+			if (bigBefore && bigAfter) {
+				ParallelIntervalsTask<T> before = new ParallelIntervalsTask<>(impl, context, a, beforeA, b, beforeB, minBlockSize, threshold, record);
+				ParallelIntervalsTask<T> after = new ParallelIntervalsTask<>(impl, context, a, afterA, b, afterB, minBlockSize, threshold, record);
+				
+				after.fork();
+				double beforeValue = before.compute();
+				double afterValue = after.join();
+				
+				value = (sum+beforeMaxPart*beforeValue)+afterMaxPart*afterValue;
+				
+				if (record) {
+					forked.addAll(before.events);
+					forked.add(recordCommon(h1aEnd, h1bEnd, length, null));
+					forked.addAll(after.events);
+				}
+				break;
+			}
+			
+			IntervalsStack stack = new IntervalsStack();
+			
+			if (bigAfter) {
+				//before part is done now, task continues by after part
+				double beforeValue = impl.compareIntervals(a, beforeA, b, beforeB, minBlockSize, head, overlap, worker, stack);
+				
+				recordCommon(h1aEnd, h1bEnd, length, head);
+				addChain(sum+beforeMaxPart*beforeValue, afterMaxPart, 0);
+				
+				rangeA.initialize(h2aBegin, h2aEnd);
+				rangeB.initialize(h2bBegin, h2bEnd);
+			} else {
+				//after part is done now (recorded behind the rest), task continues by before part
+				DiffEventsRecorder piece = recordCommon(h1aEnd, h1bEnd, length, null);
+				
+				if (record) {
+					tail.add(piece);
+				}
+				
+				double afterValue = impl.compareIntervals(a, afterA, b, afterB, minBlockSize, piece, overlap, worker, stack);
+				
+				addChain(sum, beforeMaxPart, afterMaxPart*afterValue);
+				
+				//both parts small - they are done
+				if (!bigBefore) {
+					value = impl.compareIntervals(a, beforeA, b, beforeB, minBlockSize, head, overlap, worker, stack);
+					break;
+				}
+				
+				rangeA.initialize(h1aBegin, h1aEnd);
+				rangeB.initialize(h1bBegin, h1bEnd);
+			}
+		}
+		
+		//fold chain from the innermost frame
+		for (int i=chainCount-1;i>=0;--i) {
+			value = (chainX[i]+chainMult[i]*value)+chainY[i];
+		}
+		
+		if (record) {
+			events = new ArrayList<>();
+			events.add(head);
+			events.addAll(forked);
+			
+			for (int i=tail.size()-1;i>=0;--i) {
+				events.add(tail.get(i));
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Deliver recorded events to handler.
+	 */
+	void replay(DiffEventsHandler consumer) {
+		for (DiffEventsRecorder recorder : events) {
+			recorder.replay(consumer, a, b);
+		}
+	}
+	
+	/**
+	 * Record found overlap as common part.
+	 * @param recorder where to record, new one is created when null
+	 * @return recorder or null when not recording
+	 */
+	private DiffEventsRecorder recordCommon(int beginA, int beginB, int length, DiffEventsRecorder recorder) {
+		if (!record) {
+			return null;
+		}
+		
+		if (recorder==null) {
+			recorder = new DiffEventsRecorder();
+		}
+		
+		recorder.handle(a, new IntRange(beginA, beginA+length), EventType.COMMON_PART, EventSide.LEFT);
+		recorder.handle(b, new IntRange(beginB, beginB+length), EventType.COMMON_PART, EventSide.RIGHT);
+		
+		return recorder;
+	}
+	
+	private void addChain(double x, double mult, double y) {
+		if (chainX.length==chainCount) {
+			chainX = Arrays.copyOf(chainX, chainCount*2);
+			chainMult = Arrays.copyOf(chainMult, chainCount*2);
+			chainY = Arrays.copyOf(chainY, chainCount*2);
+		}
+		
+		chainX[chainCount] = x;
+		chainMult[chainCount] = mult;
+		chainY[chainCount] = y;
+		++chainCount;
+	}
+}
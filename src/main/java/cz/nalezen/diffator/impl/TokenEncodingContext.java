@@ -0,0 +1,34 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.impl;
+
+import cz.nalezen.diffator.utils.TokenEncoder;
+
+/**
+ * Context working with token IDs. Session gives it encoder shared with CommonEndsTrimmer, so pair of contents is encoded
+ * just once per comparison and encoding buffers are reused by subsequent comparisons.
+ * @author Jaroslav Kubos
+ *
+ */
+interface TokenEncodingContext {
+
+	/**
+	 * Set encoder used by initialize().
+	 * @param encoder
+	 */
+	void setEncoder(TokenEncoder encoder);
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import cz.nalezen.diffator.Content;
+
+/**
+ * Near-duplicate index of contents by locality sensitive hashing (http://en.wikipedia.org/wiki/Locality-sensitive_hashing).
+ * MinHash signature of content is split into bands of rows, content is stored to bucket of each band. Contents sharing at
+ * least one bucket are candidates - pair having Jaccard similarity s becomes candidate with probability 1-(1-s^rows)^bands.
+ * Only candidates should be compared by ContentComparator then.
+ * Contents are identified by Content.getContentId(). Index is threadsafe and may be saved to file and loaded back.
+ * @author Jaroslav Kubos
+ *
+ */
+public class LshIndex {
+
+	private static final int FILE_MAGIC = 0x4c534831;
+	
+	public static final int DEFAULT_SHINGLE_SIZE = 4;
+	public static final long DEFAULT_SEED = 0x5DEECE66DL;
+	
+	/**
+	 * Signature size used by forThreshold().
+	 */
+	public static final int DEFAULT_SIGNATURE_SIZE = 128;
+	
+	/**
+	 * Create index with bands and rows picked so that similarity where pair becomes candidate with probability 0.5 
+	 * is close to given threshold.
+	 * @param threshold similarity in range 0.0 to 1.0
+	 * @return
+	 */
+	public static LshIndex forThreshold(double threshold) {
+		int bestBands = 1;
+		double bestError = Double.MAX_VALUE;
+		
+		for (int bands=1;bands<=DEFAULT_SIGNATURE_SIZE;++bands) {
+			if (DEFAULT_SIGNATURE_SIZE%bands!=0) {
+				continue;
+			}
+			
+			int rows = DEFAULT_SIGNATURE_SIZE/bands;
+			double halfPoint = Math.pow(1-Math.pow(0.5, 1.0/bands), 1.0/rows);
+			double error = Math.abs(halfPoint-threshold);
+			
+			if (error<bestError) {
+				bestError = error;
+				bestBands = bands;
+			}
+		}
+		
+		return new LshIndex(bestBands, DEFAULT_SIGNATURE_SIZE/bestBands);
+	}
+	
+	private final MinHasher hasher;
+	private final int bands;
+	private final int rows;
+	
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, int[]> signatures = new HashMap<>();
+	private final List<Map<Long, Set<String>>> buckets = new ArrayList<>();
+	
+	/**
+	 * Index using default shingle size and seed.
+	 * @param bands count of bands
+	 * @param rows count of signature values in one band
+	 */
+	public LshIndex(int bands, int rows) {
+		this(bands, rows, DEFAULT_SHINGLE_SIZE, DEFAULT_SEED);
+	}
+	
+	/**
+	 * @param bands count of bands
+	 * @param rows count of signature values in one band
+	 * @param shingleSize count of items in one shingle
+	 * @param seed seed of MinHash functions
+	 */
+	public LshIndex(int bands, int rows, int shingleSize, long seed) {
+		if (bands<=0 || rows<=0) {
+			throw new IllegalArgumentException("Bands and rows must be positive!");
+		}
+		
+		this.bands = bands;
+		this.rows = rows;
+		
+		hasher = new MinHasher(bands*rows, shingleSize, seed);
+		
+		for (int b=0;b<bands;++b) {
+			buckets.add(new HashMap<Long, Set<String>>());
+		}
+	}
+	
+	/**
+	 * Add content to index, previous content of the same ID is replaced.
+	 * @param content content having contentId
+	 */
+	public void add(Content content) {
+		add(requireId(content), hasher.signature(content));
+	}
+	
+	/**
+	 * Add signature to index, previous signature of the same ID is replaced.
+	 * @param contentId
+	 * @param signature signature computed by getHasher()
+	 */
+	public void add(String contentId, int[] signature) {
+		if (signature.length!=hasher.getSignatureSize()) {
+			throw new IllegalArgumentException("Wrong signature size "+signature.length+"!");
+		}
+		
+		lock.writeLock().lock();
+		
+		try {
+			removeUnlocked(contentId);
+			
+			signatures.put(contentId, signature);
+			
+			for (int b=0;b<bands;++b) {
+				Map<Long, Set<String>> band = buckets.get(b);
+				Long key = bandKey(signature, b);
+				
+				Set<String> bucket = band.get(key);
+				
+				if (bucket==null) {
+					bucket = new HashSet<>();
+					band.put(key, bucket);
+				}
+				
+				bucket.add(contentId);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Remove content from index.
+	 * @param contentId
+	 * @return false when content was not indexed
+	 */
+	public boolean remove(String contentId) {
+		lock.writeLock().lock();
+		
+		try {
+			return removeUnlocked(contentId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Find IDs of contents sharing at least one bucket with given content. Content itself (by its ID) is not returned.
+	 * @param content
+	 * @return
+	 */
+	public List<String> findCandidates(Content content) {
+		return findCandidates(content, 0);
+	}
+	
+	/**
+	 * Find IDs of contents sharing at least one bucket with given content and having estimated Jaccard similarity at least minSimilarity.
+	 * Content itself (by its ID) is not returned.
+	 * @param content
+	 * @param minSimilarity minimal estimated similarity of shingle sets
+	 * @return IDs ordered by estimated similarity, the most similar first
+	 */
+	public List<String> findCandidates(Content content, double minSimilarity) {
+		final int[] signature = hasher.signature(content);
+		final Map<String, Double> estimates = new HashMap<>();
+		
+		lock.readLock().lock();
+		
+		try {
+			for (int b=0;b<bands;++b) {
+				Set<String> bucket = buckets.get(b).get(bandKey(signature, b));
+				
+				if (bucket==null) {
+					continue;
+				}
+				
+				for (String id : bucket) {
+					if (!estimates.containsKey(id) && !id.equals(content.getContentId())) {
+						estimates.put(id, MinHasher.estimateSimilarity(signature, signatures.get(id)));
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		
+		List<String> res = new ArrayList<>();
+		
+		for (Map.Entry<String, Double> e : estimates.entrySet()) {
+			if (e.getValue()>=minSimilarity) {
+				res.add(e.getKey());
+			}
+		}
+		
+		Collections.sort(res, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				int res = Double.compare(estimates.get(o2), estimates.get(o1));
+				
+				return res!=0 ? res : o1.compareTo(o2);
+			}
+		});
+		
+		return res;
+	}
+	
+	/**
+	 * Count of indexed contents.
+	 * @return
+	 */
+	public int size() {
+		lock.readLock().lock();
+		
+		try {
+			return signatures.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Hasher computing signatures of this index.
+	 * @return
+	 */
+	public MinHasher getHasher() {
+		return hasher;
+	}
+	
+	public int getBands() {
+		return bands;
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Save index to file.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			save(out);
+		}
+	}
+	
+	/**
+	 * Save index to stream - only signatures are stored, buckets are rebuilt by load. Stream is not closed.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void save(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		
+		lock.readLock().lock();
+		
+		try {
+			data.writeInt(FILE_MAGIC);
+			data.writeInt(bands);
+			data.writeInt(rows);
+			data.writeInt(hasher.getShingleSize());
+			data.writeLong(hasher.getSeed());
+			data.writeInt(signatures.size());
+			
+			for (Map.Entry<String, int[]> e : signatures.entrySet()) {
+				data.writeUTF(e.getKey());
+				
+				for (int value : e.getValue()) {
+					data.writeInt(value);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		
+		data.flush();
+	}
+	
+	/**
+	 * Load index saved by save().
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static LshIndex load(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return load(in);
+		}
+	}
+	
+	/**
+	 * Load index saved by save(). Stream is not closed.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static LshIndex load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		
+		if (data.readInt()!=FILE_MAGIC) {
+			throw new IOException("Not a LSH index file!");
+		}
+		
+		int bands = data.readInt();
+		int rows = data.readInt();
+		int shingleSize = data.readInt();
+		long seed = data.readLong();
+		
+		LshIndex res = new LshIndex(bands, rows, shingleSize, seed);
+		
+		int count = data.readInt();
+		
+		for (int c=0;c<count;++c) {
+			String id = data.readUTF();
+			int[] signature = new int[bands*rows];
+			
+			for (int i=0;i<signature.length;++i) {
+				signature[i] = data.readInt();
+			}
+			
+			res.add(id, signature);
+		}
+		
+		return res;
+	}
+	
+	private boolean removeUnlocked(String contentId) {
+		int[] signature = signatures.remove(contentId);
+		
+		if (signature==null) {
+			return false;
+		}
+		
+		for (int b=0;b<bands;++b) {
+			Map<Long, Set<String>> band = buckets.get(b);
+			Long key = bandKey(signature, b);
+			Set<String> bucket = band.get(key);
+			
+			bucket.remove(contentId);
+			
+			if (bucket.isEmpty()) {
+				band.remove(key);
+			}
+		}
+		
+		return true;
+	}
+	
+	private long bandKey(int[] signature, int band) {
+		long key = band;
+		
+		for (int i=band*rows;i<(band+1)*rows;++i) {
+			key = (key+signature[i])*0x9E3779B97F4A7C15L;
+		}
+		
+		return key;
+	}
+	
+	private static String requireId(Content content) {
+		if (content.getContentId()==null) {
+			throw new IllegalArgumentException("Content has no contentId!");
+		}
+		
+		return content.getContentId();
+	}
+}
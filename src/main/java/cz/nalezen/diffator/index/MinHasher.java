@@ -0,0 +1,143 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.index;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cz.nalezen.diffator.Content;
+
+/**
+ * Computes MinHash signatures (http://en.wikipedia.org/wiki/MinHash) of contents. Content is split into shingles
+ * (overlapping sequences of shingleSize items), signature holds minimum of each hash function over all shingles.
+ * Share of equal signature positions estimates Jaccard similarity of shingle sets. Hashes are based on String.hashCode(),
+ * so signatures are stable across JVM runs. Object is immutable and threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class MinHasher {
+
+	private final int signatureSize;
+	private final int shingleSize;
+	private final long seed;
+	
+	private final long[] multipliers;
+	private final long[] addends;
+	
+	/**
+	 * @param signatureSize count of hash functions
+	 * @param shingleSize count of items in one shingle
+	 * @param seed seed of hash functions - signatures are comparable only when created with the same seed
+	 */
+	public MinHasher(int signatureSize, int shingleSize, long seed) {
+		if (signatureSize<=0 || shingleSize<=0) {
+			throw new IllegalArgumentException("Signature and shingle size must be positive!");
+		}
+		
+		this.signatureSize = signatureSize;
+		this.shingleSize = shingleSize;
+		this.seed = seed;
+		
+		multipliers = new long[signatureSize];
+		addends = new long[signatureSize];
+		
+		Random random = new Random(seed);
+		
+		for (int i=0;i<signatureSize;++i) {
+			multipliers[i] = random.nextLong()|1;
+			addends[i] = random.nextLong();
+		}
+	}
+	
+	/**
+	 * Compute signature of content. Content shorter than shingle size forms one shingle, empty content has signature
+	 * of Integer.MAX_VALUE values.
+	 * @param content
+	 * @return new array of signatureSize elements
+	 */
+	public int[] signature(Content content) {
+		int[] res = new int[signatureSize];
+		Arrays.fill(res, Integer.MAX_VALUE);
+		
+		int shingles = Math.max(content.length()-shingleSize+1, content.length()>0 ? 1 : 0);
+		
+		for (int s=0;s<shingles;++s) {
+			long hash = shingleHash(content, s, Math.min(s+shingleSize, content.length()));
+			
+			for (int i=0;i<signatureSize;++i) {
+				//upper bits of multiply-add hash are well mixed, sign bit is dropped
+				int value = (int)((hash*multipliers[i]+addends[i])>>>33);
+				
+				if (value<res[i]) {
+					res[i] = value;
+				}
+			}
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Estimate Jaccard similarity of shingle sets by share of equal signature positions.
+	 * @param a signature
+	 * @param b signature of the same size
+	 * @return value in range 0.0 to 1.0
+	 */
+	public static double estimateSimilarity(int[] a, int[] b) {
+		if (a.length!=b.length) {
+			throw new IllegalArgumentException("Signatures differ in size!");
+		}
+		
+		int same = 0;
+		
+		for (int i=0;i<a.length;++i) {
+			if (a[i]==b[i]) {
+				++same;
+			}
+		}
+		
+		return same/(double)a.length;
+	}
+	
+	public int getSignatureSize() {
+		return signatureSize;
+	}
+	
+	public int getShingleSize() {
+		return shingleSize;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	private static long shingleHash(Content content, int begin, int end) {
+		long hash = 0;
+		
+		for (int i=begin;i<end;++i) {
+			hash = (hash+content.getItem(i).hashCode())*0x9E3779B97F4A7C15L;
+		}
+		
+		//final mix of murmur3
+		hash ^= hash>>>33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash>>>33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash>>>33;
+		
+		return hash;
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.TokenDictionary;
+import cz.nalezen.diffator.TokenizedContent;
+
+/**
+ * Splits text into Content in one pass - items are stored directly to array which is handed over to Content
+ * (no List or String[] copy). Text may be read from Reader, InputStream or CharSequence.
+ * When dictionary is set TokenizedContent is created and IDs are assigned during tokenization.
+ * Object is not threadsafe but it may be reused by subsequent calls.
+ * @author Jaroslav Kubos
+ *
+ */
+public class ContentTokenizer {
+	
+	/**
+	 * How is text split to items.
+	 * @author Jaroslav Kubos
+	 *
+	 */
+	public enum Mode {
+		/**
+		 * Items are words separated by whitespaces
+		 */
+		words,
+		
+		/**
+		 * Items are lines (without line terminators), empty lines are kept
+		 */
+		lines,
+		
+		/**
+		 * Items are separated by any of given delimiter characters, empty items are skipped
+		 */
+		delimiters
+	}
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private Mode mode;
+	private String delimiters;
+	private boolean interning;
+	private TokenDictionary dictionary;
+	
+	//state of actual tokenization
+	private String[] items;
+	private int[] ids;
+	private int count;
+	private HashMap<String, String> internedItems;
+	
+	private char[] buffer;
+	private StringBuilder pending = new StringBuilder();
+	
+	/**
+	 * Tokenizer splitting text to words.
+	 * @return
+	 */
+	public static ContentTokenizer words() {
+		return new ContentTokenizer(Mode.words, null);
+	}
+	
+	/**
+	 * Tokenizer splitting text to lines.
+	 * @return
+	 */
+	public static ContentTokenizer lines() {
+		return new ContentTokenizer(Mode.lines, null);
+	}
+	
+	/**
+	 * Tokenizer splitting text by any of given characters.
+	 * @param delimiters delimiter characters
+	 * @return
+	 */
+	public static ContentTokenizer delimitedBy(String delimiters) {
+		return new ContentTokenizer(Mode.delimiters, delimiters);
+	}
+	
+	/**
+	 * Construct tokenizer.
+	 * @param mode how is text split
+	 * @param delimiters delimiter characters, used only by Mode.delimiters
+	 */
+	public ContentTokenizer(Mode mode, String delimiters) {
+		if (mode==Mode.delimiters && (delimiters==null || delimiters.isEmpty())) {
+			throw new IllegalArgumentException("Delimiters must be specified!");
+		}
+		
+		this.mode = mode;
+		this.delimiters = delimiters;
+	}
+	
+	/**
+	 * Turns on/off interning - equal items share one String instance within produced Content. Saves memory
+	 * for texts with repeating words. Items are always interned when dictionary is set (its tokens are used).
+	 * @param interning
+	 */
+	public void setInterning(boolean interning) {
+		this.interning = interning;
+	}
+	
+	public boolean isInterning() {
+		return interning;
+	}
+	
+	/**
+	 * Set dictionary assigning IDs - TokenizedContent is produced then.
+	 * @param dictionary dictionary or null for plain Content
+	 */
+	public void setDictionary(TokenDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+	
+	public TokenDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	/**
+	 * Tokenize text from reader. Reader is read to its end but it is not closed.
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public Content tokenize(Reader reader) throws IOException {
+		start();
+		
+		if (buffer==null) {
+			buffer = new char[BUFFER_SIZE];
+		}
+		
+		pending.setLength(0);
+		
+		int read;
+		
+		while ((read = reader.read(buffer))>=0) {
+			int begin = 0;
+			
+			for (int i=0;i<read;++i) {
+				if (isSeparator(buffer[i])) {
+					if (pending.length()>0) {
+						pending.append(buffer, begin, i-begin);
+						addItem(pending.toString());
+						pending.setLength(0);
+					} else {
+						addItem(buffer, begin, i);
+					}
+					
+					begin = i+1;
+				}
+			}
+			
+			pending.append(buffer, begin, read-begin);
+		}
+		
+		if (pending.length()>0) {
+			addItem(pending.toString());
+			pending.setLength(0);
+		}
+		
+		return finish();
+	}
+	
+	/**
+	 * Tokenize text from stream. Stream is read to its end but it is not closed.
+	 * @param stream
+	 * @param charset encoding of text
+	 * @return
+	 * @throws IOException
+	 */
+	public Content tokenize(InputStream stream, Charset charset) throws IOException {
+		return tokenize(new InputStreamReader(stream, charset));
+	}
+	
+	/**
+	 * Tokenize text.
+	 * @param text
+	 * @return
+	 */
+	public Content tokenize(CharSequence text) {
+		start();
+		
+		int begin = 0;
+		int length = text.length();
+		
+		for (int i=0;i<length;++i) {
+			if (isSeparator(text.charAt(i))) {
+				addItem(text, begin, i);
+				begin = i+1;
+			}
+		}
+		
+		addItem(text, begin, length);
+		
+		return finish();
+	}
+	
+	private boolean isSeparator(char c) {
+		switch (mode) {
+		case words:
+			return Character.isWhitespace(c);
+		case lines:
+			return c=='\n';
+		default:
+			return delimiters.indexOf(c)>=0;
+		}
+	}
+	
+	private void addItem(char[] chars, int begin, int end) {
+		if (begin<end || mode==Mode.lines) {
+			addItem(new String(chars, begin, end-begin));
+		}
+	}
+	
+	private void addItem(CharSequence text, int begin, int end) {
+		if (begin<end || (mode==Mode.lines && end<text.length())) {
+			addItem(text.subSequence(begin, end).toString());
+		}
+	}
+	
+	/**
+	 * Store item to result - strips line terminator, interns and assigns ID.
+	 * @param item
+	 */
+	private void addItem(String item) {
+		if (mode==Mode.lines && item.endsWith("\r")) {
+			item = item.substring(0, item.length()-1);
+		}
+		
+		if (mode!=Mode.lines && item.isEmpty()) {
+			return;
+		}
+		
+		if (count==items.length) {
+			items = Arrays.copyOf(items, count*2);
+			
+			if (ids!=null) {
+				ids = Arrays.copyOf(ids, count*2);
+			}
+		}
+		
+		if (dictionary!=null) {
+			int id = dictionary.getId(item);
+			
+			ids[count] = id;
+			item = dictionary.getToken(id);
+			
+		} else if (interning) {
+			String interned = internedItems.get(item);
+			
+			if (interned==null) {
+				internedItems.put(item, item);
+			} else {
+				item = interned;
+			}
+		}
+		
+		items[count++] = item;
+	}
+	
+	private void start() {
+		items = new String[64];
+		ids = dictionary!=null ? new int[items.length] : null;
+		count = 0;
+		internedItems = interning && dictionary==null ? new HashMap<String, String>() : null;
+	}
+	
+	private Content finish() {
+		String[] resItems = count==items.length ? items : Arrays.copyOf(items, count);
+		Content res;
+		
+		if (dictionary!=null) {
+			int[] resIds = count==ids.length ? ids : Arrays.copyOf(ids, count);
+			res = new TokenizedContent(resItems, resIds, dictionary);
+		} else {
+			res = new Content(resItems);
+		}
+		
+		items = null;
+		ids = null;
+		internedItems = null;
+		
+		return res;
+	}
+}
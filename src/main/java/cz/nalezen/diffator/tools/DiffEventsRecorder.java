@@ -0,0 +1,110 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.tools;
+
+import java.util.Arrays;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.DiffEventsHandler;
+import cz.nalezen.diffator.utils.IntRange;
+
+/**
+ * Handler storing diff events into compact int array, so they may be replayed later to other handler.
+ * Only handle() events are stored - onBeforeStart() and onDone() are ignored. Contents are not stored - they are
+ * delivered when replayed.
+ * @author Jaroslav Kubos
+ *
+ */
+public class DiffEventsRecorder implements DiffEventsHandler {
+
+	private static final EventType[] TYPES = EventType.values();
+	private static final EventSide[] SIDES = EventSide.values();
+	
+	//type, side, begin, end
+	private static final int INTS = 4;
+	
+	private int[] events = new int[4*INTS];
+	private int count;
+	
+	@Override
+	public void onBeforeStart() {
+	}
+
+	@Override
+	public void handle(Content content, IntRange range, EventType eventType, EventSide eventSide) {
+		if (events.length<(count+1)*INTS) {
+			events = Arrays.copyOf(events, events.length*2);
+		}
+		
+		int i = count*INTS;
+		
+		events[i] = eventType.ordinal();
+		events[i+1] = eventSide.ordinal();
+		events[i+2] = range.getBegin();
+		events[i+3] = range.getEnd();
+		
+		++count;
+	}
+
+	@Override
+	public void onDone(double similarity) {
+	}
+	
+	/**
+	 * Deliver stored events to handler in the same order as they were recorded.
+	 * @param consumer target handler
+	 * @param left content delivered with LEFT events
+	 * @param right content delivered with RIGHT events
+	 */
+	public void replay(DiffEventsHandler consumer, Content left, Content right) {
+		replay(consumer, left, right, count);
+	}
+	
+	/**
+	 * Deliver first stored events to handler in the same order as they were recorded.
+	 * @param consumer target handler
+	 * @param left content delivered with LEFT events
+	 * @param right content delivered with RIGHT events
+	 * @param limit count of delivered events, at most size()
+	 */
+	public void replay(DiffEventsHandler consumer, Content left, Content right, int limit) {
+		IntRange range = new IntRange();
+		
+		for (int e=0;e<limit;++e) {
+			int i = e*INTS;
+			
+			EventSide side = SIDES[events[i+1]];
+			range.initialize(events[i+2], events[i+3]);
+			
+			consumer.handle(side==EventSide.LEFT ? left : right, range, TYPES[events[i]], side);
+		}
+	}
+	
+	/**
+	 * Count of stored events.
+	 * @return
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Remove all stored events - memory is kept for reuse.
+	 */
+	public void clear() {
+		count = 0;
+	}
+}
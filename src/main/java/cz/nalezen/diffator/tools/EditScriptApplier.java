@@ -0,0 +1,224 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.tools;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.TokenDictionary;
+import cz.nalezen.diffator.TokenizedContent;
+
+/**
+ * Rebuilds right content from left content and edit script written by EditScriptWriter. Script is read as stream
+ * run by run, items are stored directly to array handed over to result.
+ * @author Jaroslav Kubos
+ *
+ */
+public class EditScriptApplier {
+
+	//biggest array JVM allocates safely
+	private static final int MAX_ITEMS = Integer.MAX_VALUE-8;
+	
+	//buffers grow only as data really come, so corrupted lengths can't allocate memory in advance
+	private static final int INITIAL_BYTES = 1<<12;
+	
+	private TokenDictionary dictionary;
+	
+	/**
+	 * Applier of scripts with inline items.
+	 */
+	public EditScriptApplier() {
+		this(null);
+	}
+	
+	/**
+	 * Applier of scripts with items stored as token IDs (or inline).
+	 * @param dictionary dictionary used by writer, result is TokenizedContent of this dictionary
+	 */
+	public EditScriptApplier(TokenDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+	
+	/**
+	 * Apply script to left content. Stream is read byte by byte up to the end of script (it is not closed), so it
+	 * should be buffered.
+	 * @param left content the script was created from
+	 * @param script
+	 * @return right content
+	 * @throws IOException when script is corrupted or doesn't belong to left content
+	 */
+	public Content apply(Content left, InputStream script) throws IOException {
+		InputStream in = script;
+		
+		int magic = 0;
+		
+		for (int i=0;i<4;++i) {
+			magic = (magic<<8)|readByte(in);
+		}
+		
+		if (magic!=EditScriptWriter.MAGIC || readByte(in)!=EditScriptWriter.VERSION) {
+			throw new IOException("Unknown edit script format!");
+		}
+		
+		boolean ids = readByte(in)==EditScriptWriter.MODE_IDS;
+		
+		if (ids && dictionary==null) {
+			throw new IOException("Edit script stores token IDs, dictionary is required!");
+		}
+		
+		int[] leftIds = dictionary!=null && left.getTokenDictionary()==dictionary ? left.getTokenIds() : null;
+		
+		String[] items = new String[Math.max(16, left.length())];
+		int[] itemIds = dictionary!=null ? new int[items.length] : null;
+		int count = 0;
+		int position = 0;
+		
+		while (true) {
+			long code = readVarint(in);
+			int op = (int)(code&((1<<EditScriptWriter.OP_BITS)-1));
+			long length = code>>>EditScriptWriter.OP_BITS;
+			
+			if (op==EditScriptWriter.OP_END) {
+				break;
+			}
+			
+			if (op!=EditScriptWriter.OP_INSERT && position+length>left.length()) {
+				throw new IOException("Edit script doesn't belong to left content!");
+			}
+			
+			if (op==EditScriptWriter.OP_DELETE) {
+				position += length;
+				continue;
+			}
+			
+			if (count+length>MAX_ITEMS) {
+				throw new IOException("Corrupted edit script - too many items!");
+			}
+			
+			for (long i=0;i<length;++i) {
+				if (count==items.length) {
+					items = Arrays.copyOf(items, (int)Math.min(items.length*2L, MAX_ITEMS));
+					
+					if (itemIds!=null) {
+						itemIds = Arrays.copyOf(itemIds, items.length);
+					}
+				}
+				
+				String item;
+				int id = -1;
+				
+				if (op==EditScriptWriter.OP_KEEP) {
+					item = left.getItem(position);
+					
+					if (leftIds!=null) {
+						id = leftIds[position];
+					}
+					
+					++position;
+				} else if (ids) {
+					long token = readVarint(in);
+					
+					if (token<0 || token>=dictionary.size()) {
+						throw new IOException("Corrupted edit script - unknown token ID "+token+"!");
+					}
+					
+					id = (int)token;
+					item = dictionary.getToken(id);
+				} else {
+					long bytes = readVarint(in);
+					
+					if (bytes<0 || bytes>MAX_ITEMS) {
+						throw new IOException("Corrupted edit script - item too long!");
+					}
+					
+					item = readString(in, (int)bytes);
+				}
+				
+				if (itemIds!=null) {
+					itemIds[count] = id>=0 ? id : dictionary.getId(item);
+				}
+				
+				items[count++] = item;
+			}
+		}
+		
+		if (position!=left.length()) {
+			throw new IOException("Edit script doesn't belong to left content!");
+		}
+		
+		items = count==items.length ? items : Arrays.copyOf(items, count);
+		
+		if (itemIds!=null) {
+			return new TokenizedContent(items, count==itemIds.length ? itemIds : Arrays.copyOf(itemIds, count), dictionary);
+		}
+		
+		return new Content(items);
+	}
+	
+	private static int readByte(InputStream in) throws IOException {
+		int res = in.read();
+		
+		if (res<0) {
+			throw new EOFException("Unexpected end of edit script!");
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Read UTF-8 string of given byte length, buffer grows with data read.
+	 */
+	private static String readString(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[Math.min(length, INITIAL_BYTES)];
+		int offset = 0;
+		
+		while (offset<length) {
+			if (offset==bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int)Math.min(bytes.length*2L, length));
+			}
+			
+			int read = in.read(bytes, offset, bytes.length-offset);
+			
+			if (read<0) {
+				throw new EOFException("Unexpected end of edit script!");
+			}
+			
+			offset += read;
+		}
+		
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+	
+	private static long readVarint(InputStream in) throws IOException {
+		long res = 0;
+		
+		for (int shift=0;shift<64;shift+=7) {
+			int b = readByte(in);
+			res |= (long)(b&0x7F)<<shift;
+			
+			if ((b&0x80)==0) {
+				return res;
+			}
+		}
+		
+		throw new IOException("Corrupted edit script!");
+	}
+}
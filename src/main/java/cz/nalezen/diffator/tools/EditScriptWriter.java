@@ -0,0 +1,158 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.DiffEventsHandler;
+import cz.nalezen.diffator.TokenDictionary;
+import cz.nalezen.diffator.utils.IntRange;
+
+/**
+ * Diff events handler writing compact binary edit script - how to rebuild right content from left one
+ * (see EditScriptApplier). Script is sequence of varint encoded keep/delete/insert runs, inserted items are stored
+ * inline (UTF-8) or as token IDs of given dictionary. Common items are not stored at all.
+ * Script is written to stream continuously, stream is flushed (not closed) by onDone(). One writer writes one script.
+ * @author Jaroslav Kubos
+ *
+ */
+public class EditScriptWriter implements DiffEventsHandler {
+
+	static final int MAGIC = 0x44494653;
+	static final int VERSION = 1;
+	
+	static final int MODE_INLINE = 0;
+	static final int MODE_IDS = 1;
+	
+	//operation is stored in lowest bits of run code, length in the rest
+	static final int OP_BITS = 2;
+	static final int OP_KEEP = 0;
+	static final int OP_DELETE = 1;
+	static final int OP_INSERT = 2;
+	static final int OP_END = 3;
+	
+	private OutputStream out;
+	private TokenDictionary dictionary;
+	
+	/**
+	 * Writer storing inserted items inline.
+	 * @param out
+	 */
+	public EditScriptWriter(OutputStream out) {
+		this(out, null);
+	}
+	
+	/**
+	 * Writer storing inserted items as token IDs - the same dictionary must be used to apply script.
+	 * @param out
+	 * @param dictionary dictionary assigning IDs, null for inline items
+	 */
+	public EditScriptWriter(OutputStream out, TokenDictionary dictionary) {
+		this.out = new BufferedOutputStream(out);
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Writes header.
+	 */
+	@Override
+	public void onBeforeStart() {
+		try {
+			for (int shift=24;shift>=0;shift-=8) {
+				out.write(MAGIC>>>shift);
+			}
+			
+			out.write(VERSION);
+			out.write(dictionary!=null ? MODE_IDS : MODE_INLINE);
+		} catch (IOException e) {
+			throw new RuntimeException("Edit script can't be written!", e);
+		}
+	}
+
+	/**
+	 * Common part is written as keep run of left content, different part as delete run of left content
+	 * and insert run of right content.
+	 */
+	@Override
+	public void handle(Content content, IntRange range, EventType eventType, EventSide eventSide) {
+		try {
+			if (eventType==EventType.COMMON_PART) {
+				if (eventSide==EventSide.LEFT) {
+					writeRun(OP_KEEP, range.length());
+				}
+			} else if (eventSide==EventSide.LEFT) {
+				writeRun(OP_DELETE, range.length());
+			} else if (!range.isEmpty()) {
+				writeRun(OP_INSERT, range.length());
+				
+				for (int i=range.getBegin();i<range.getEnd();++i) {
+					writeItem(content, i);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Edit script can't be written!", e);
+		}
+	}
+
+	/**
+	 * Writes end of script and flushes stream.
+	 */
+	@Override
+	public void onDone(double similarity) {
+		try {
+			writeRun(OP_END, 0);
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Edit script can't be written!", e);
+		}
+	}
+	
+	private void writeRun(int op, int length) throws IOException {
+		if (length>0 || op==OP_END) {
+			writeVarint(((long)length<<OP_BITS)|op);
+		}
+	}
+	
+	private void writeItem(Content content, int index) throws IOException {
+		if (dictionary!=null) {
+			int[] ids = content.getTokenIds();
+			
+			writeVarint(ids!=null && content.getTokenDictionary()==dictionary ? ids[index] : dictionary.getId(content.getItem(index)));
+		} else {
+			byte[] bytes = content.getItem(index).getBytes(StandardCharsets.UTF_8);
+			
+			writeVarint(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	/**
+	 * Unsigned LEB128 - 7 bits per byte, highest bit says more bytes follow.
+	 */
+	private void writeVarint(long value) throws IOException {
+		while ((value&~0x7FL)!=0) {
+			out.write((int)((value&0x7F)|0x80));
+			value >>>= 7;
+		}
+		
+		out.write((int)value);
+	}
+}
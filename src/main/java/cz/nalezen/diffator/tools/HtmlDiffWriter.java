@@ -0,0 +1,278 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import cz.nalezen.diffator.Content;
+import cz.nalezen.diffator.DiffEventsHandler;
+import cz.nalezen.diffator.utils.IntRange;
+
+/**
+ * Diff events handler producing HTML - for bulk report generation. Items are HTML escaped and written to reusable
+ * char buffer which is flushed to output in chunks, styles are given by CSS classes. Inline and side-by-side
+ * layouts are supported. Writer may be reused for more diffs (see setOutput()), it is not threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class HtmlDiffWriter implements DiffEventsHandler {
+	
+	/**
+	 * Layout of output.
+	 * @author Jaroslav Kubos
+	 *
+	 */
+	public enum Layout {
+		/**
+		 * One flow of text - common parts once, removed and added parts marked
+		 */
+		inline,
+		
+		/**
+		 * Table with left and right content in columns, one row per block
+		 */
+		sideBySide
+	}
+	
+	private static final int BUFFER_SIZE = 16384;
+	
+	private static final String STYLE = "<style>"
+			+ "del.diff{background-color:#fcc;text-decoration:none}ins.diff{background-color:#cfc;text-decoration:none}"
+			+ "table.diff{border-collapse:collapse;width:100%}table.diff td{vertical-align:top;width:50%;border:1px solid #ddd}"
+			+ "td.same{background-color:#eee}td.del{background-color:#fcc}td.ins{background-color:#cfc}"
+			+ "</style>";
+	
+	private Writer out;
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int length;
+	
+	private Layout layout = Layout.inline;
+	private String title = "diff";
+	private String itemsSeparator = " ";
+	private boolean standalone = true;
+	
+	/**
+	 * Writer producing UTF-8 into stream.
+	 * @param out
+	 */
+	public HtmlDiffWriter(OutputStream out) {
+		this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Writer producing HTML into given writer.
+	 * @param out
+	 */
+	public HtmlDiffWriter(Writer out) {
+		this.out = out;
+	}
+	
+	/**
+	 * Set output of next diff - buffer is reused.
+	 * @param out
+	 */
+	public void setOutput(Writer out) {
+		this.out = out;
+		length = 0;
+	}
+
+	/**
+	 * Writes HTML header (when standalone) and start of diff.
+	 */
+	@Override
+	public void onBeforeStart() {
+		if (standalone) {
+			write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset='UTF-8'>\n<title>");
+			writeEscaped(title);
+			write("</title>\n");
+			write(STYLE);
+			write("\n</head>\n<body>\n");
+		}
+		
+		write(layout==Layout.inline ? "<div class='diff'>\n" : "<table class='diff'>\n");
+	}
+
+	/**
+	 * Writes items of event.
+	 */
+	@Override
+	public void handle(Content content, IntRange range, EventType eventType, EventSide eventSide) {
+		boolean left = eventSide==EventSide.LEFT;
+		
+		if (layout==Layout.sideBySide) {
+			write(left ? "<tr><td class='" : "<td class='");
+			write(eventType==EventType.COMMON_PART ? "same" : left ? "del" : "ins");
+			write("'>");
+			writeItems(content, range);
+			write(left ? "</td>" : "</td></tr>\n");
+			
+		} else if (eventType==EventType.COMMON_PART) {
+			//common part is the same on both sides
+			if (left) {
+				writeItems(content, range);
+			}
+			
+		} else if (!range.isEmpty()) {
+			write(left ? "<del class='diff'>" : "<ins class='diff'>");
+			writeItems(content, range);
+			write(left ? "</del>" : "</ins>");
+		}
+	}
+
+	/**
+	 * Writes end of diff with similarity and flushes output.
+	 */
+	@Override
+	public void onDone(double similarity) {
+		write(layout==Layout.inline ? "\n</div>\n" : "</table>\n");
+		write("<div>Contents similarity is: ");
+		write(String.valueOf(similarity));
+		write("</div>\n");
+		
+		if (standalone) {
+			write("</body>\n</html>\n");
+		}
+		
+		try {
+			flushBuffer();
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("HTML diff can't be written!", e);
+		}
+	}
+	
+	private void writeItems(Content content, IntRange range) {
+		for (int i=range.getBegin();i<range.getEnd();++i) {
+			writeEscaped(content.getItem(i));
+			write(itemsSeparator);
+		}
+	}
+	
+	private void write(String s) {
+		int sLength = s.length();
+		
+		for (int offset=0;offset<sLength;) {
+			if (length==buffer.length) {
+				flushChunk();
+			}
+			
+			int count = Math.min(sLength-offset, buffer.length-length);
+			s.getChars(offset, offset+count, buffer, length);
+			
+			length += count;
+			offset += count;
+		}
+	}
+	
+	private void writeEscaped(String s) {
+		int sLength = s.length();
+		
+		for (int i=0;i<sLength;++i) {
+			char c = s.charAt(i);
+			
+			switch (c) {
+			case '<':
+				write("&lt;");
+				break;
+			case '>':
+				write("&gt;");
+				break;
+			case '&':
+				write("&amp;");
+				break;
+			case '"':
+				write("&quot;");
+				break;
+			case '\'':
+				write("&#39;");
+				break;
+			default:
+				if (length==buffer.length) {
+					flushChunk();
+				}
+				
+				buffer[length++] = c;
+			}
+		}
+	}
+	
+	private void flushChunk() {
+		try {
+			flushBuffer();
+		} catch (IOException e) {
+			throw new RuntimeException("HTML diff can't be written!", e);
+		}
+	}
+	
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, length);
+		length = 0;
+	}
+
+	/**
+	 * Layout of output. Default is "Layout.inline".
+	 * @return
+	 */
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Layout layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * Title of page printed as <title>.
+	 * @return
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	/**
+	 * Separator string for items (not escaped). By default space - " ".
+	 * @return
+	 */
+	public String getItemsSeparator() {
+		return itemsSeparator;
+	}
+
+	public void setItemsSeparator(String itemsSeparator) {
+		this.itemsSeparator = itemsSeparator;
+	}
+
+	/**
+	 * Whether whole HTML page is written. When false only diff fragment is written - for reports with more diffs
+	 * (styles of classes "diff", "same", "del" and "ins" must be provided by page then). By default true.
+	 * @return
+	 */
+	public boolean isStandalone() {
+		return standalone;
+	}
+
+	public void setStandalone(boolean standalone) {
+		this.standalone = standalone;
+	}
+}
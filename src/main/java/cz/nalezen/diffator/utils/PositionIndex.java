@@ -0,0 +1,187 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index of token IDs - for each distinct token there is sorted list of positions where it occurs.
+ * Implemented by primitive arrays: open addressing hash maps token to its slot, positions of all tokens
+ * are stored in one array grouped by token.
+ * @author Jaroslav Kubos
+ *
+ */
+public class PositionIndex {
+
+	private static final int EMPTY = -1;
+
+	private int[] hashTokens = new int[0];
+	private int[] hashSlots = new int[0];
+	private int hashMask;
+
+	//positions of slot s are in positions[starts[s]] <= X < positions[starts[s+1]]
+	private int[] starts = new int[1];
+	private int[] positions = new int[0];
+	private int slotsCount;
+
+	/**
+	 * Build index over part of tokens.
+	 * @param tokens token IDs
+	 * @param begin inclusive
+	 * @param end exclusive
+	 */
+	public void build(int[] tokens, int begin, int end) {
+		int length = end-begin;
+		int capacity = Integer.highestOneBit(Math.max(2*length-1, 1))<<1;
+
+		if (hashTokens.length<capacity) {
+			hashTokens = new int[capacity];
+			hashSlots = new int[capacity];
+		}
+
+		hashMask = capacity-1;
+		Arrays.fill(hashSlots, 0, capacity, EMPTY);
+
+		if (starts.length<length+2) {
+			starts = new int[length+2];
+		}
+
+		if (positions.length<length) {
+			positions = new int[length];
+		}
+
+		slotsCount = 0;
+		starts[0] = 0;
+
+		//count occurrences - starts[s+1] holds count of slot s
+		for (int i=begin;i<end;++i) {
+			int slot = findOrAdd(tokens[i]);
+
+			++starts[slot+1];
+		}
+
+		for (int s=0;s<slotsCount;++s) {
+			starts[s+1] += starts[s];
+		}
+
+		//fill positions - starts[s] is moved to the end of slot s temporarily
+		for (int i=begin;i<end;++i) {
+			int slot = find(tokens[i]);
+
+			positions[starts[slot]++] = i;
+		}
+
+		for (int s=slotsCount;s>0;--s) {
+			starts[s] = starts[s-1];
+		}
+
+		starts[0] = 0;
+	}
+
+	/**
+	 * Find slot of token.
+	 * @param token
+	 * @return slot or -1 when token is not present
+	 */
+	public int find(int token) {
+		int h = hash(token);
+
+		while (true) {
+			int slot = hashSlots[h];
+
+			if (slot==EMPTY) {
+				return -1;
+			} else if (hashTokens[h]==token) {
+				return slot;
+			}
+
+			h = (h+1)&hashMask;
+		}
+	}
+
+	/**
+	 * Number of occurrences of token.
+	 * @param token
+	 * @return
+	 */
+	public int count(int token) {
+		int slot = find(token);
+
+		return slot<0 ? 0 : starts[slot+1]-starts[slot];
+	}
+
+	/**
+	 * Number of distinct tokens.
+	 * @return
+	 */
+	public int getSlotsCount() {
+		return slotsCount;
+	}
+
+	/**
+	 * Begin of positions of slot in getPositions() - inclusive.
+	 * @param slot
+	 * @return
+	 */
+	public int getStart(int slot) {
+		return starts[slot];
+	}
+
+	/**
+	 * End of positions of slot in getPositions() - exclusive.
+	 * @param slot
+	 * @return
+	 */
+	public int getEnd(int slot) {
+		return starts[slot+1];
+	}
+
+	/**
+	 * Positions of all tokens grouped by slots, ascending within slot.
+	 * @return
+	 */
+	public int[] getPositions() {
+		return positions;
+	}
+
+	private int findOrAdd(int token) {
+		int h = hash(token);
+
+		while (true) {
+			int slot = hashSlots[h];
+
+			if (slot==EMPTY) {
+				slot = slotsCount++;
+
+				hashTokens[h] = token;
+				hashSlots[h] = slot;
+				starts[slot+1] = 0;
+
+				return slot;
+			} else if (hashTokens[h]==token) {
+				return slot;
+			}
+
+			h = (h+1)&hashMask;
+		}
+	}
+
+	private int hash(int token) {
+		int h = token*0x9E3779B9;
+
+		return (h^(h>>>16))&hashMask;
+	}
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cz.nalezen.diffator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Finds longest common substring of two integer sequences by binary search of its length. Each tested length hashes
+ * all windows of right sequence by Rabin-Karp rolling hash into open addressing table, then windows of left sequence
+ * are looked up. Every hash hit is verified by comparing tokens, so result is exact. Hashes are polynomial modulo
+ * prime 2^61-1 (hashes modulo 2^64 collide massively on Thue-Morse like sequences).
+ * Expected time O((M+N) log min(M,N)), memory O(N). Object may be reused - arrays only grow, but only part of table
+ * proportional to searched range is cleaned and used.
+ * @author Jaroslav Kubos
+ *
+ */
+public class RollingHashMatcher {
+
+	private static final long MOD = (1L<<61)-1;
+	private static final long BASE = 0x9E3779B97F4A7C15L>>>4;
+	
+	private static final long MASK30 = (1L<<30)-1;
+	private static final long MASK31 = (1L<<31)-1;
+	
+	private static final int MIN_CAPACITY = 16;
+	
+	//open addressing table of window index+1, 0 is empty slot
+	private int[] slots = new int[16];
+	
+	//hash of each window of right sequence and next window with the same hash
+	private long[] windowHashes = new long[16];
+	private int[] next = new int[16];
+	
+	/**
+	 * Find longest common substring. From more candidates the one ending first in left sequence is chosen,
+	 * then the one ending first in right sequence.
+	 * @param a left sequence
+	 * @param beginA
+	 * @param endA
+	 * @param b right sequence
+	 * @param beginB
+	 * @param endB
+	 * @param res result - left untouched when there is no common token
+	 * @return length of longest common substring
+	 */
+	public int findLongestCommon(int[] a, int beginA, int endA, int[] b, int beginB, int endB, Overlap res) {
+		int low = 0;
+		int high = Math.min(endA-beginA, endB-beginB);
+		
+		//low is always length of found common substring, high is upper bound
+		while (low<high) {
+			int length = (low+high+1)>>>1;
+			
+			if (find(a, beginA, endA, b, beginB, endB, length, res)) {
+				low = length;
+			} else {
+				high = length-1;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * Find first common substring of given length.
+	 * @return false when there is none
+	 */
+	private boolean find(int[] a, int beginA, int endA, int[] b, int beginB, int endB, int length, Overlap res) {
+		int windows = endB-beginB-length+1;
+		
+		int mask = prepare(windows)-1;
+		long power = power(length);
+		
+		long hash = hash(b, beginB, length);
+		
+		for (int w=0;;++w) {
+			windowHashes[w] = hash;
+			
+			if (w==windows-1) {
+				break;
+			}
+			
+			hash = roll(hash, b[beginB+w], b[beginB+w+length], power);
+		}
+		
+		//windows are inserted from the last one, so chains are in ascending order
+		for (int w=windows-1;w>=0;--w) {
+			insert(w, mask);
+		}
+		
+		hash = hash(a, beginA, length);
+		
+		for (int i=beginA;;++i) {
+			int slot = slot(hash, mask);
+			
+			while (slots[slot]!=0) {
+				int w = slots[slot]-1;
+				
+				if (windowHashes[w]==hash) {
+					for (;w>=0;w=next[w]) {
+						if (same(a, i, b, beginB+w, length)) {
+							res.getA().initialize(i, i+length);
+							res.getB().initialize(beginB+w, beginB+w+length);
+							
+							return true;
+						}
+					}
+					
+					break;
+				}
+				
+				slot = (slot+1)&mask;
+			}
+			
+			if (i+length==endA) {
+				return false;
+			}
+			
+			hash = roll(hash, a[i], a[i+length], power);
+		}
+	}
+	
+	/**
+	 * Add window to table - it becomes head of chain of windows with the same hash.
+	 */
+	private void insert(int w, int mask) {
+		long hash = windowHashes[w];
+		next[w] = -1;
+		
+		int slot = slot(hash, mask);
+		
+		while (slots[slot]!=0) {
+			int head = slots[slot]-1;
+			
+			if (windowHashes[head]==hash) {
+				next[w] = head;
+				break;
+			}
+			
+			slot = (slot+1)&mask;
+		}
+		
+		slots[slot] = w+1;
+	}
+	
+	/**
+	 * Grow arrays for given number of windows and clean part of table used for them - table is kept at most half full.
+	 * @return capacity of used part of table (power of two)
+	 */
+	private int prepare(int windows) {
+		if (windowHashes.length<windows) {
+			windowHashes = new long[Math.max(windows, windowHashes.length*2)];
+			next = new int[windowHashes.length];
+		}
+		
+		int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(2*windows-1, 1))<<1);
+		
+		if (slots.length<capacity) {
+			slots = new int[capacity];
+		} else {
+			Arrays.fill(slots, 0, capacity, 0);
+		}
+		
+		return capacity;
+	}
+	
+	private static long hash(int[] tokens, int begin, int length) {
+		long res = 0;
+		
+		for (int i=begin;i<begin+length;++i) {
+			res = mod(mulMod(res, BASE)+token(tokens[i]));
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Hash of window moved by one token.
+	 */
+	private static long roll(long hash, int first, int last, long power) {
+		long rest = hash-mulMod(token(first), power);
+		
+		if (rest<0) {
+			rest += MOD;
+		}
+		
+		return mod(mulMod(rest, BASE)+token(last));
+	}
+	
+	/**
+	 * BASE^(length-1) - weight of the first token of window.
+	 */
+	private static long power(int length) {
+		long res = 1;
+		
+		for (int i=1;i<length;++i) {
+			res = mulMod(res, BASE);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Token as non-negative number below MOD.
+	 */
+	private static long token(int token) {
+		return token&0xFFFFFFFFL;
+	}
+	
+	/**
+	 * a*b modulo 2^61-1 for a, b below modulus - product is split to 31 bit parts so nothing overflows.
+	 */
+	private static long mulMod(long a, long b) {
+		long aHigh = a>>>31;
+		long aLow = a&MASK31;
+		long bHigh = b>>>31;
+		long bLow = b&MASK31;
+		
+		long mid = aLow*bHigh+aHigh*bLow;
+		
+		return mod((aHigh*bHigh<<1)+(mid>>>30)+((mid&MASK30)<<31)+aLow*bLow);
+	}
+	
+	/**
+	 * Reduce non-negative (as unsigned) number modulo 2^61-1.
+	 */
+	private static long mod(long x) {
+		long res = (x&MOD)+(x>>>61);
+		
+		return res>=MOD ? res-MOD : res;
+	}
+	
+	private static int slot(long hash, int mask) {
+		hash ^= hash>>>29;
+		hash *= BASE;
+		
+		return (int)(hash>>>32)&mask;
+	}
+	
+	private static boolean same(int[] a, int indA, int[] b, int indB, int length) {
+		for (int i=0;i<length;++i) {
+			if (a[indA+i]!=b[indB+i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+}
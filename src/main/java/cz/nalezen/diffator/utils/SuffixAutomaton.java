@@ -0,0 +1,261 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Suffix automaton over token IDs - http://en.wikipedia.org/wiki/Suffix_automaton
+ * It is built in linear time over one sequence, then the longest common substring with other sequence is found
+ * by streaming it through the automaton - also in linear time.
+ * Data are stored in primitive arrays which are reused (and grown when needed) by subsequent builds.
+ * Object is not threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class SuffixAutomaton {
+
+	private static final long EMPTY_KEY = -1L;
+
+	//states
+	private int[] len = new int[0];
+	private int[] link = new int[0];
+	private int[] firstPos = new int[0];
+	private int[] head = new int[0];
+	private int statesCount;
+	private int last;
+
+	//transitions - linked list per state, used for cloning
+	private int[] edgeToken = new int[0];
+	private int[] edgeTarget = new int[0];
+	private int[] edgeNext = new int[0];
+	private int edgesCount;
+
+	//transitions - open addressing hash (state, token) -> edge, used for lookup
+	private long[] hashKeys = new long[0];
+	private int[] hashEdges = new int[0];
+	private int hashMask;
+
+	/**
+	 * Build automaton over part of tokens.
+	 * @param tokens token IDs, must be non-negative
+	 * @param begin inclusive
+	 * @param end exclusive
+	 */
+	public void build(int[] tokens, int begin, int end) {
+		prepare(end-begin);
+
+		statesCount = 0;
+		edgesCount = 0;
+		last = newState(0, -1);
+		link[last] = -1;
+
+		for (int i=begin;i<end;++i) {
+			extend(tokens[i], i);
+		}
+	}
+
+	/**
+	 * Find longest common substring of built sequence and part of other sequence. From more candidates
+	 * the one ending first in streamed sequence and then first in built sequence is picked.
+	 * @param tokens token IDs of streamed sequence
+	 * @param begin inclusive
+	 * @param end exclusive
+	 * @param res range A is set to position in streamed sequence, range B to position in built sequence;
+	 *  not modified when there is no common substring
+	 * @return length of found substring
+	 */
+	public int findLongestCommon(int[] tokens, int begin, int end, Overlap res) {
+		int state = 0;
+		int length = 0;
+		int best = 0;
+
+		for (int i=begin;i<end;++i) {
+			int token = tokens[i];
+
+			int next = transition(state, token);
+
+			//shorten match until it may be extended
+			while (next<0 && state!=0) {
+				state = link[state];
+				length = len[state];
+				next = transition(state, token);
+			}
+
+			if (next<0) {
+				state = 0;
+				length = 0;
+				continue;
+			}
+
+			state = next;
+			++length;
+
+			if (length>best) {
+				best = length;
+
+				res.getA().initialize(i+1-length, i+1);
+				res.getB().initialize(firstPos[state]+1-length, firstPos[state]+1);
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Grow arrays for sequence of given length and clean hash.
+	 */
+	private void prepare(int length) {
+		int maxStates = 2*length+2;
+		int maxEdges = 3*length+3;
+
+		if (len.length<maxStates) {
+			len = new int[maxStates];
+			link = new int[maxStates];
+			firstPos = new int[maxStates];
+			head = new int[maxStates];
+		}
+
+		if (edgeToken.length<maxEdges) {
+			edgeToken = new int[maxEdges];
+			edgeTarget = new int[maxEdges];
+			edgeNext = new int[maxEdges];
+		}
+
+		//load factor at most 0.5
+		int capacity = Integer.highestOneBit(2*maxEdges-1)<<1;
+
+		if (hashKeys.length<capacity) {
+			hashKeys = new long[capacity];
+			hashEdges = new int[capacity];
+		}
+
+		hashMask = capacity-1;
+		Arrays.fill(hashKeys, 0, capacity, EMPTY_KEY);
+	}
+
+	private void extend(int token, int pos) {
+		int cur = newState(len[last]+1, pos);
+		int p = last;
+
+		while (p>=0 && transition(p, token)<0) {
+			addEdge(p, token, cur);
+			p = link[p];
+		}
+
+		if (p<0) {
+			link[cur] = 0;
+		} else {
+			int q = transition(p, token);
+
+			if (len[p]+1==len[q]) {
+				link[cur] = q;
+			} else {
+				int clone = newState(len[p]+1, firstPos[q]);
+
+				for (int e=head[q];e>=0;e=edgeNext[e]) {
+					addEdge(clone, edgeToken[e], edgeTarget[e]);
+				}
+
+				link[clone] = link[q];
+
+				while (p>=0) {
+					int e = findEdge(p, token);
+
+					if (edgeTarget[e]!=q) {
+						break;
+					}
+
+					edgeTarget[e] = clone;
+					p = link[p];
+				}
+
+				link[q] = clone;
+				link[cur] = clone;
+			}
+		}
+
+		last = cur;
+	}
+
+	private int newState(int length, int pos) {
+		int state = statesCount++;
+
+		len[state] = length;
+		firstPos[state] = pos;
+		head[state] = -1;
+
+		return state;
+	}
+
+	private void addEdge(int state, int token, int target) {
+		int e = edgesCount++;
+
+		edgeToken[e] = token;
+		edgeTarget[e] = target;
+		edgeNext[e] = head[state];
+		head[state] = e;
+
+		long key = key(state, token);
+		int slot = slot(key);
+
+		while (hashKeys[slot]!=EMPTY_KEY) {
+			slot = (slot+1)&hashMask;
+		}
+
+		hashKeys[slot] = key;
+		hashEdges[slot] = e;
+	}
+
+	/**
+	 * @return edge index or -1
+	 */
+	private int findEdge(int state, int token) {
+		long key = key(state, token);
+		int slot = slot(key);
+
+		while (true) {
+			long k = hashKeys[slot];
+
+			if (k==key) {
+				return hashEdges[slot];
+			} else if (k==EMPTY_KEY) {
+				return -1;
+			}
+
+			slot = (slot+1)&hashMask;
+		}
+	}
+
+	/**
+	 * @return target state or -1
+	 */
+	private int transition(int state, int token) {
+		int e = findEdge(state, token);
+
+		return e<0 ? -1 : edgeTarget[e];
+	}
+
+	private static long key(int state, int token) {
+		return ((long)state<<32) | (token&0xffffffffL);
+	}
+
+	private int slot(long key) {
+		long h = key*0x9E3779B97F4A7C15L;
+
+		return (int)(h>>>32)&hashMask;
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2013 Jaroslav Kubos
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cz.nalezen.diffator.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import cz.nalezen.diffator.Content;
+
+/**
+ * Helper providing integer token IDs for pair of compared contents - for algorithms which can't work with Strings.
+ * Static methods allocate new arrays, instance (see encodeReusing()) keeps primitive hash table and ID arrays for 
+ * subsequent encodings - instance is not threadsafe.
+ * @author Jaroslav Kubos
+ *
+ */
+public class TokenEncoder {
+
+	//open addressing table of items and their IDs - reused by encodeReusing()
+	private String[] keys = new String[0];
+	private int[] keyIds = new int[0];
+	private int mask;
+	private int size;
+	
+	//open addressing table of shared token IDs (stored +1, 0 is empty slot) - used by commonCount()
+	private int[] tokenKeys = new int[0];
+	
+	private int[] idsA = new int[0];
+	private int[] idsB = new int[0];
+	
+	//pair encoded by the last call
+	private Content lastA;
+	private Content lastB;
+	
+	public TokenEncoder() {
+	}
+
+	/**
+	 * Get token IDs of both contents. When contents share IDs (see Content.sharesTokenIds()) these are returned
+	 * directly, otherwise IDs local for this pair are assigned. Returned arrays must not be modified.
+	 * @param a left content
+	 * @param b right content
+	 * @return array of two elements - IDs of left and right content
+	 */
+	public static int[][] encode(Content a, Content b) {
+		return encode(a, b, new int[2][]);
+	}
+
+	/**
+	 * Same as encode(Content, Content) but stores result to given array - no allocation is done when contents share IDs.
+	 * @param a left content
+	 * @param b right content
+	 * @param res array of at least two elements, IDs of left and right content are stored there
+	 * @return res
+	 */
+	public static int[][] encode(Content a, Content b, int[][] res) {
+		if (a.sharesTokenIds(b)) {
+			res[0] = a.getTokenIds();
+			res[1] = b.getTokenIds();
+		} else {
+			HashMap<String, Integer> ids = new HashMap<>();
+
+			res[0] = encode(a, ids);
+			res[1] = encode(b, ids);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Same as encode(Content, Content, int[][]) but hash table and ID arrays are reused. Returned arrays may be longer
+	 * than contents and they are valid until next call or release(). Pair encoded by the previous call is not encoded again.
+	 * @param a left content
+	 * @param b right content
+	 * @param res array of at least two elements, IDs of left and right content are stored there
+	 * @return res
+	 */
+	public int[][] encodeReusing(Content a, Content b, int[][] res) {
+		if (a.sharesTokenIds(b)) {
+			res[0] = a.getTokenIds();
+			res[1] = b.getTokenIds();
+			
+			return res;
+		}
+		
+		if (a!=lastA || b!=lastB) {
+			prepare(a.length()+b.length());
+			
+			idsA = encodeReusing(a, idsA);
+			idsB = encodeReusing(b, idsB);
+			
+			lastA = a;
+			lastB = b;
+		}
+		
+		res[0] = idsA;
+		res[1] = idsB;
+		
+		return res;
+	}
+	
+	/**
+	 * Forget encoded pair - references to contents and items are dropped, arrays are kept.
+	 */
+	public void release() {
+		lastA = null;
+		lastB = null;
+		
+		if (size>0) {
+			Arrays.fill(keys, null);
+			size = 0;
+		}
+	}
+	
+	/**
+	 * Size of multiset intersection of items of contents (upper bound of their longest common block), counting stops
+	 * as soon as limit is reached. Hash table of this encoder is used for counts, pair encoded by encodeReusing() is forgotten.
+	 * @param a left content
+	 * @param b right content
+	 * @param limit maximal returned value
+	 * @return count of common items, at most limit
+	 */
+	public int commonCount(Content a, Content b, int limit) {
+		Content smaller = a.length()<=b.length() ? a : b;
+		Content bigger = smaller==a ? b : a;
+		
+		//counts of items of smaller content are kept in keyIds
+		prepare(smaller.length());
+		
+		lastA = null;
+		lastB = null;
+		
+		try {
+			if (a.sharesTokenIds(b)) {
+				return commonTokensCount(smaller.getTokenIds(), smaller.length(), bigger.getTokenIds(), bigger.length(), limit);
+			}
+			
+			return commonItemsCount(smaller, bigger, limit);
+		} finally {
+			release();
+		}
+	}
+	
+	private int commonTokensCount(int[] smaller, int smallerLength, int[] bigger, int biggerLength, int limit) {
+		if (tokenKeys.length<keys.length) {
+			tokenKeys = new int[keys.length];
+		} else {
+			Arrays.fill(tokenKeys, 0, mask+1, 0);
+		}
+		
+		for (int i=0;i<smallerLength;++i) {
+			int slot = tokenSlot(smaller[i]);
+			
+			if (tokenKeys[slot]==0) {
+				tokenKeys[slot] = smaller[i]+1;
+				keyIds[slot] = 0;
+			}
+			
+			++keyIds[slot];
+		}
+		
+		int res = 0;
+		
+		for (int i=0;i<biggerLength && res<limit;++i) {
+			int slot = tokenSlot(bigger[i]);
+			
+			if (tokenKeys[slot]!=0 && keyIds[slot]>0) {
+				--keyIds[slot];
+				++res;
+			}
+		}
+		
+		return res;
+	}
+	
+	private int tokenSlot(int token) {
+		int hash = token*0x9E3779B9;
+		int slot = (hash^(hash>>>16))&mask;
+		
+		while (tokenKeys[slot]!=0 && tokenKeys[slot]!=token+1) {
+			slot = (slot+1)&mask;
+		}
+		
+		return slot;
+	}
+	
+	private int commonItemsCount(Content smaller, Content bigger, int limit) {
+		for (int i=0;i<smaller.length();++i) {
+			String item = smaller.getItem(i);
+			int slot = slot(item);
+			
+			if (keys[slot]==null) {
+				keys[slot] = item;
+				keyIds[slot] = 0;
+				++size;
+			}
+			
+			++keyIds[slot];
+		}
+		
+		int res = 0;
+		
+		for (int i=0;i<bigger.length() && res<limit;++i) {
+			int slot = slot(bigger.getItem(i));
+			
+			if (keys[slot]!=null && keyIds[slot]>0) {
+				--keyIds[slot];
+				++res;
+			}
+		}
+		
+		return res;
+	}
+	
+	private int slot(String item) {
+		int hash = item.hashCode()*0x9E3779B9;
+		int slot = (hash^(hash>>>16))&mask;
+		
+		while (keys[slot]!=null && !keys[slot].equals(item)) {
+			slot = (slot+1)&mask;
+		}
+		
+		return slot;
+	}
+	
+	private void prepare(int items) {
+		int capacity = Integer.highestOneBit(Math.max(2*items-1, 1))<<1;
+		
+		if (keys.length<capacity) {
+			keys = new String[capacity];
+			keyIds = new int[capacity];
+		} else if (size>0) {
+			Arrays.fill(keys, null);
+		}
+		
+		mask = keys.length-1;
+		size = 0;
+	}
+	
+	private int[] encodeReusing(Content content, int[] buffer) {
+		int[] res = buffer.length>=content.length() ? buffer : new int[Math.max(content.length(), buffer.length*2)];
+		
+		for (int i=0;i<content.length();++i) {
+			String item = content.getItem(i);
+			int slot = slot(item);
+			
+			if (keys[slot]==null) {
+				keys[slot] = item;
+				keyIds[slot] = size++;
+			}
+			
+			res[i] = keyIds[slot];
+		}
+		
+		return res;
+	}
+	
+	private static int[] encode(Content content, HashMap<String, Integer> ids) {
+		int[] res = new int[content.length()];
+
+		for (int i=0;i<res.length;++i) {
+			String item = content.getItem(i);
+			Integer id = ids.get(item);
+
+			if (id==null) {
+				id = ids.size();
+				ids.put(item, id);
+			}
+
+			res[i] = id;
+		}
+
+		return res;
+	}
+}